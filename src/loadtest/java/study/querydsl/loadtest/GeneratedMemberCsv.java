@@ -0,0 +1,36 @@
+package study.querydsl.loadtest;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * member0,0,team0 ... 형식의 CSV를 필요할 때마다 한 줄씩 만들어 주는 InputStream.
+ * MemberCsvImporter로 그대로 흘려보내서 수백만 건도 메모리에 올리지 않고 넣는다.
+ */
+class GeneratedMemberCsv extends InputStream {
+
+    private final int members;
+    private final int teams;
+    private int next;
+    private byte[] line = "username,age,teamName\n".getBytes(StandardCharsets.UTF_8);
+    private int position;
+
+    GeneratedMemberCsv(int members, int teams) {
+        this.members = members;
+        this.teams = teams;
+    }
+
+    @Override
+    public int read() {
+        if (position == line.length) {
+            if (next == members) {
+                return -1;
+            }
+            line = ("member" + next + "," + (next % 100) + ",team" + (next % teams) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            next++;
+        }
+        return line[position++];
+    }
+}
@@ -0,0 +1,47 @@
+package study.querydsl.loadtest;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * key=value 형식의 인자를 받는다. 예) rate=500 duration=60 members=1000000
+ */
+@Data
+class LoadTestConfig {
+
+    //초당 요청 수(open model: 응답이 늦어도 이 속도로 계속 보낸다)
+    private int rate = 200;
+    private int warmupSeconds = 5;
+    private int durationSeconds = 30;
+    private int members = 100_000;
+    private int teams = 10;
+    //전체 요청 중 /hello 비율
+    private double helloRatio = 0.2;
+    //이만큼 응답을 기다리는 요청이 쌓이면 더 보내지 않고 dropped로 센다.
+    private int maxInFlight = 2_000;
+    private long seed = 42;
+    private String report = "build/loadtest/report.json";
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        LoadTestConfig config = new LoadTestConfig();
+        config.rate = Integer.parseInt(values.getOrDefault("rate", String.valueOf(config.rate)));
+        config.warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", String.valueOf(config.warmupSeconds)));
+        config.durationSeconds = Integer.parseInt(values.getOrDefault("duration", String.valueOf(config.durationSeconds)));
+        config.members = Integer.parseInt(values.getOrDefault("members", String.valueOf(config.members)));
+        config.teams = Integer.parseInt(values.getOrDefault("teams", String.valueOf(config.teams)));
+        config.helloRatio = Double.parseDouble(values.getOrDefault("helloRatio", String.valueOf(config.helloRatio)));
+        config.maxInFlight = Integer.parseInt(values.getOrDefault("maxInFlight", String.valueOf(config.maxInFlight)));
+        config.seed = Long.parseLong(values.getOrDefault("seed", String.valueOf(config.seed)));
+        config.report = values.getOrDefault("report", config.report);
+        return config;
+    }
+}
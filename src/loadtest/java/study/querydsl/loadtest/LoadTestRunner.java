@@ -0,0 +1,227 @@
+package study.querydsl.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.importer.ImportResult;
+import study.querydsl.importer.MemberCsvImporter;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 1. 메모리 H2로 QuerydslApplication을 띄우고 members 만큼 데이터를 넣는다.
+ * 2. rate(초당 요청 수)에 맞춰 정해진 시각마다 요청을 보낸다(open model).
+ *    응답을 기다리지 않고 다음 요청을 보내기 때문에 서버가 느려지면 그만큼 지연이 그대로 쌓인다.
+ * 3. 지연은 "보냈어야 하는 시각"부터 잰다. 그래야 coordinated omission으로 p99가 좋아 보이는 착시가 없다.
+ * 4. maxInFlight에 걸려서 못 보낸 요청도 빼지 않고 에러로 세고, 끝내 응답을 못 받은 것으로 보고 최대 지연으로 기록한다.
+ *    빼버리면 과부하일수록 느린 요청이 통계에서 사라져서 p99가 오히려 좋아 보인다.
+ * 5. 결과를 엔드포인트별 p50/p99/p999 JSON으로 남겨서 빌드끼리 비교한다.
+ */
+@Slf4j
+public class LoadTestRunner {
+
+    //1ms ~ 1분, 유효숫자 3자리
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(QuerydslApplication.class)
+                .run("--spring.profiles.active=loadtest",
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                        "--init-member.mode=sync",
+                        "--logging.level.org.hibernate.SQL=info",
+                        "--spring.jpa.properties.hibernate.use_sql_comments=false",
+                        "--decorator.datasource.p6spy.enable-logging=false");
+        try {
+            ImportResult seeded = context.getBean(MemberCsvImporter.class)
+                    .importCsv(new GeneratedMemberCsv(config.getMembers(), config.getTeams()));
+            log.info("[loadtest] seed {} members, {} rows/s", seeded.getImportedRows(), Math.round(seeded.getRowsPerSecond()));
+
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            Map<String, Object> report = new LoadTestRunner(config, "http://localhost:" + port).run();
+            report.put("seed", seeded);
+
+            Path path = Paths.get(config.getReport());
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            new ObjectMapper()
+                    .enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(path.toFile(), report);
+            log.info("[loadtest] report: {}", path.toAbsolutePath());
+        } finally {
+            context.close();
+        }
+    }
+
+    private final LoadTestConfig config;
+    private final String baseUrl;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Random random;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Endpoint hello = new Endpoint("hello");
+    private final Endpoint members = new Endpoint("members");
+    private final LongAdder dropped = new LongAdder();
+
+    LoadTestRunner(LoadTestConfig config, String baseUrl) {
+        this.config = config;
+        this.baseUrl = baseUrl;
+        this.random = new Random(config.getSeed());
+    }
+
+    Map<String, Object> run() {
+        log.info("[loadtest] warmup {}s", config.getWarmupSeconds());
+        drive(config.getWarmupSeconds());
+        hello.reset();
+        members.reset();
+        dropped.reset();
+
+        log.info("[loadtest] measure {}s at {} req/s", config.getDurationSeconds(), config.getRate());
+        long start = System.nanoTime();
+        drive(config.getDurationSeconds());
+        //남은 응답을 기다린다.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("config", config);
+        report.put("elapsedSeconds", elapsedSeconds);
+        report.put("dropped", dropped.sum());
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        endpoints.put(hello.name, hello.summary(elapsedSeconds));
+        endpoints.put(members.name, members.summary(elapsedSeconds));
+        report.put("endpoints", endpoints);
+        log.info("[loadtest] {}", endpoints);
+        return report;
+    }
+
+    /**
+     * i번째 요청은 start + i / rate 시각에 보낸다.
+     */
+    private void drive(int seconds) {
+        long intervalNanos = 1_000_000_000L / config.getRate();
+        long start = System.nanoTime();
+        long total = (long) config.getRate() * seconds;
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * intervalNanos;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean isHello = random.nextDouble() < config.getHelloRatio();
+            String path = isHello ? "/hello" : "/v1/members" + randomCondition();
+            Endpoint endpoint = isHello ? hello : members;
+            if (inFlight.get() >= config.getMaxInFlight()) {
+                dropped.increment();
+                endpoint.recordDropped();
+                continue;
+            }
+            send(endpoint, path, intended);
+        }
+    }
+
+    /**
+     * 조건 조합을 골고루 섞는다. 조건이 하나도 없는 전체 조회도 일부러 포함한다.
+     */
+    private String randomCondition() {
+        StringBuilder query = new StringBuilder();
+        if (random.nextInt(4) == 0) {
+            query.append("&username=member").append(random.nextInt(config.getMembers()));
+        }
+        if (random.nextInt(2) == 0) {
+            query.append("&teamName=team").append(random.nextInt(config.getTeams()));
+        }
+        if (random.nextInt(2) == 0) {
+            int ageGoe = random.nextInt(100);
+            query.append("&ageGoe=").append(ageGoe);
+            if (random.nextBoolean()) {
+                query.append("&ageLoe=").append(Math.min(99, ageGoe + random.nextInt(5)));
+            }
+        }
+        return query.length() == 0 ? "" : "?" + query.substring(1);
+    }
+
+    private void send(Endpoint endpoint, String path, long intendedNanos) {
+        inFlight.incrementAndGet();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    endpoint.record(System.nanoTime() - intendedNanos, error == null && response.statusCode() < 400);
+                    inFlight.decrementAndGet();
+                });
+    }
+
+    private static class Endpoint {
+        private final String name;
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void record(long latencyNanos, boolean success) {
+            recorder.recordValue(Math.min(latencyNanos, HIGHEST_TRACKABLE_NANOS));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        //보내지도 못한 요청은 응답을 끝까지 못 받은 것과 같다.
+        void recordDropped() {
+            dropped.increment();
+            record(HIGHEST_TRACKABLE_NANOS, false);
+        }
+
+        void reset() {
+            recorder.reset();
+            errors.reset();
+            dropped.reset();
+        }
+
+        Map<String, Object> summary(double elapsedSeconds) {
+            Histogram histogram = recorder.getIntervalHistogram();
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", histogram.getTotalCount());
+            summary.put("errors", errors.sum());
+            //errors 중 maxInFlight에 걸려서 보내지 못한 수
+            summary.put("dropped", dropped.sum());
+            summary.put("throughput", histogram.getTotalCount() / elapsedSeconds);
+            summary.put("meanMs", histogram.getMean() / 1_000_000.0);
+            summary.put("p50Ms", histogram.getValueAtPercentile(50) / 1_000_000.0);
+            summary.put("p90Ms", histogram.getValueAtPercentile(90) / 1_000_000.0);
+            summary.put("p99Ms", histogram.getValueAtPercentile(99) / 1_000_000.0);
+            summary.put("p999Ms", histogram.getValueAtPercentile(99.9) / 1_000_000.0);
+            summary.put("maxMs", histogram.getMaxValue() / 1_000_000.0);
+            return summary;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import study.querydsl.query.GuardedJPAQueryFactory;
+import study.querydsl.query.QueryPlanMonitor;
 
 import javax.persistence.EntityManager;
 
@@ -14,9 +16,10 @@ public class QuerydslApplication {
         SpringApplication.run(QuerydslApplication.class, args);
     }
 
+    //리터럴이 JPQL에 박혀서 query plan cache가 오염되지 않도록 감싼 팩토리를 쓴다.
     @Bean
-    JPAQueryFactory jpaQueryFactory(EntityManager em){
-        return new JPAQueryFactory(em);
+    JPAQueryFactory jpaQueryFactory(EntityManager em, QueryPlanMonitor queryPlanMonitor){
+        return new GuardedJPAQueryFactory(em, queryPlanMonitor);
     }
 
 }
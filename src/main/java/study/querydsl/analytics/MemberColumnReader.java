@@ -0,0 +1,86 @@
+package study.querydsl.analytics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.UsernameNormalizer;
+import study.querydsl.repository.TeamNameCache;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 분석용 대량 조회를 MemberColumns로 바로 읽는다.
+ * JPQL(Querydsl) 결과는 하이버네이트가 행마다 Object[]와 박싱된 값을 만들기 때문에
+ * 여기서는 MemberJpaRepository.search와 같은 조건을 SQL로 만들어 JDBC ResultSet에서 primitive로 꺼낸다.
+ *
+ * team도 search처럼 join하지 않는다. teamName 조건은 TeamNameCache로 team_id 조건으로 바꾸고, 팀 이름도 캐시에서 채운다.
+ *
+ * JDBC로 바로 읽으니 같은 트랜잭션에서 아직 flush 안 된 엔티티 변경은 안 보인다. 필요하면 먼저 em.flush().
+ * (flush 안 된 팀은 캐시에도 없으니 그 이름으로 거르면 빈 결과다. 어차피 JDBC로는 안 보이는 팀이다)
+ */
+@Component
+public class MemberColumnReader {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TeamNameCache teamNameCache;
+    private final int fetchSize;
+
+    public MemberColumnReader(JdbcTemplate jdbcTemplate, TeamNameCache teamNameCache,
+                              @Value("${member.analytics.fetch-size:10000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.teamNameCache = teamNameCache;
+        this.fetchSize = fetchSize;
+    }
+
+    public MemberColumns read(MemberSearchCondition condition) {
+        MemberColumns columns = new MemberColumns(fetchSize);
+        StringBuilder sql = new StringBuilder("select m.member_id, m.age, m.team_id from member m where 1 = 1");
+        List<Object> params = new ArrayList<>();
+        if (hasText(condition.getUsername())) {
+            if (condition.isUsernameIgnoreCase()) {
+                sql.append(" and m.normalized_username = ?");
+                params.add(UsernameNormalizer.normalize(condition.getUsername()));
+            } else {
+                sql.append(" and m.username = ?");
+                params.add(condition.getUsername());
+            }
+        }
+        if (hasText(condition.getTeamName())) {
+            List<Long> teamIds = teamNameCache.idsOf(condition.getTeamName());
+            if (teamIds.isEmpty()) {
+                return columns;
+            }
+            sql.append(" and m.team_id in (").append(String.join(", ", Collections.nCopies(teamIds.size(), "?"))).append(")");
+            params.addAll(teamIds);
+        }
+        if (condition.getAgeGoe() != null) {
+            sql.append(" and m.age >= ?");
+            params.add(condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            sql.append(" and m.age <= ?");
+            params.add(condition.getAgeLoe());
+        }
+        sql.append(" order by m.member_id");
+
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString());
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            return ps;
+        }, rs -> {
+            //getLong/getInt는 primitive를 바로 돌려준다. 컬럼은 위치로 읽는다.
+            long teamId = rs.getLong(3);
+            columns.add(rs.getLong(1), rs.getInt(2), rs.wasNull() ? null : teamNameCache.nameOf(teamId));
+        });
+        return columns;
+    }
+}
@@ -0,0 +1,135 @@
+package study.querydsl.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * member 조회 결과를 행(Tuple) 대신 열(column) 단위 primitive 배열로 들고 있는다.
+ * 100만 행이면 List<Tuple>은 Tuple + Object[] + Long + Integer ... 수백만 개 객체가 되지만
+ * 여기서는 long[], int[], int[] 세 개와 팀 이름 사전뿐이다.
+ *
+ * 팀 이름은 사전(dictionary)으로 바꿔서 teamCodes[i]에는 teamDictionary의 인덱스를 넣는다. 팀이 없으면 NO_TEAM.
+ */
+public class MemberColumns {
+
+    public static final int NO_TEAM = -1;
+
+    private long[] memberIds;
+    private int[] ages;
+    private int[] teamCodes;
+    private final List<String> teamDictionary = new ArrayList<>();
+    private final Map<String, Integer> teamCodeByName = new HashMap<>();
+    private int size;
+
+    public MemberColumns(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.memberIds = new long[capacity];
+        this.ages = new int[capacity];
+        this.teamCodes = new int[capacity];
+    }
+
+    //MemberColumnReader가 ResultSet을 읽으면서 한 행씩 넣는다.
+    void add(long memberId, int age, String teamName) {
+        if (size == memberIds.length) {
+            int capacity = size << 1;
+            memberIds = Arrays.copyOf(memberIds, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            teamCodes = Arrays.copyOf(teamCodes, capacity);
+        }
+        memberIds[size] = memberId;
+        ages[size] = age;
+        teamCodes[size] = teamName == null ? NO_TEAM : teamCode(teamName);
+        size++;
+    }
+
+    private int teamCode(String teamName) {
+        Integer code = teamCodeByName.get(teamName);
+        if (code == null) {
+            code = teamDictionary.size();
+            teamDictionary.add(teamName);
+            teamCodeByName.put(teamName, code);
+        }
+        return code;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memberId(int row) {
+        return memberIds[checkRow(row)];
+    }
+
+    public int age(int row) {
+        return ages[checkRow(row)];
+    }
+
+    public int teamCode(int row) {
+        return teamCodes[checkRow(row)];
+    }
+
+    public String teamName(int row) {
+        int code = teamCode(row);
+        return code == NO_TEAM ? null : teamDictionary.get(code);
+    }
+
+    /**
+     * 아래 배열들은 복사본이 아니다. 앞에서 size()개까지만 유효하다.
+     */
+    public long[] memberIdColumn() {
+        return memberIds;
+    }
+
+    public int[] ageColumn() {
+        return ages;
+    }
+
+    public int[] teamCodeColumn() {
+        return teamCodes;
+    }
+
+    public List<String> teamDictionary() {
+        return teamDictionary;
+    }
+
+    //count, sum, avg, max, min (QuerydslBasicTest.aggregation 과 같은 값)
+    public IntSummaryStatistics ageStatistics() {
+        IntSummaryStatistics statistics = new IntSummaryStatistics();
+        for (int i = 0; i < size; i++) {
+            statistics.accept(ages[i]);
+        }
+        return statistics;
+    }
+
+    /**
+     * 팀별 평균 나이. 팀 코드가 0부터 연속이라 Map 대신 배열에 모은다. 팀 없는 회원은 빠진다.
+     */
+    public Map<String, Double> averageAgeByTeam() {
+        long[] sums = new long[teamDictionary.size()];
+        int[] counts = new int[teamDictionary.size()];
+        for (int i = 0; i < size; i++) {
+            int code = teamCodes[i];
+            if (code != NO_TEAM) {
+                sums[code] += ages[i];
+                counts[code]++;
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int code = 0; code < sums.length; code++) {
+            result.put(teamDictionary.get(code), (double) sums[code] / counts[code]);
+        }
+        return result;
+    }
+
+    private int checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,16 @@
+package study.querydsl.async;
+
+import lombok.Data;
+
+@Data
+public class QueryExecutorStats {
+
+    private String name;
+    private int maxThreads;
+    private int activeThreads;
+    private int queued;
+    private int queueCapacity;
+    private long completed;
+    //큐까지 꽉 차서 503으로 돌려보낸 요청 수
+    private long rejected;
+}
@@ -0,0 +1,116 @@
+package study.querydsl.async;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.deadline.RequestDeadline;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 비동기 엔드포인트(/v1/async/...)의 DB 쿼리를 Tomcat 스레드 대신 여기서 돌린다.
+ * - 엔드포인트마다 따로 스레드 풀(bulkhead)을 둬서 느린 검색이 밀려도 다른 엔드포인트는 영향이 없다.
+ * - 스레드 수 합계는 커넥션 풀 크기를 넘지 않는다. 넘겨봐야 커넥션을 기다리며 놀 뿐이다.
+ * - 큐도 크기 제한이 있어서 꽉 차면 바로 거절(503)한다.
+ *
+ * Executor 타입 빈으로 등록하면 스프링 부트의 applicationTaskExecutor가 안 만들어지고
+ * 그걸 쓰는 JPA deferred bootstrap이 깨지니까 풀은 이 클래스 안에만 둔다.
+ */
+@Slf4j
+@Component
+public class QueryExecutors {
+
+    private final Map<String, Bulkhead> bulkheads = new LinkedHashMap<>();
+
+    public QueryExecutors(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize,
+                          @Value("${member.async.endpoints:search,search-page,changes}") List<String> endpoints,
+                          @Value("${member.async.queue-capacity:100}") int queueCapacity) {
+        int threadsPerEndpoint = Math.max(1, connectionPoolSize / endpoints.size());
+        for (String endpoint : endpoints) {
+            bulkheads.put(endpoint, new Bulkhead(endpoint, threadsPerEndpoint, queueCapacity));
+        }
+        log.info("query executor: {} x {} threads (커넥션 풀 {}), queue {}",
+                endpoints, threadsPerEndpoint, connectionPoolSize, queueCapacity);
+    }
+
+    /**
+     * endpoint 전용 풀에서 query를 실행한다. 풀과 큐가 꽉 찼으면 RejectedExecutionException을 바로 던진다.
+     * 요청 스레드의 deadline을 그대로 들고 가서 풀 스레드의 쿼리에도 타임아웃이 걸린다.
+     */
+    public <T> CompletableFuture<T> submit(String endpoint, Supplier<T> query) {
+        Bulkhead bulkhead = bulkheads.get(endpoint);
+        if (bulkhead == null) {
+            throw new IllegalArgumentException("등록되지 않은 endpoint: " + endpoint + " (member.async.endpoints)");
+        }
+        RequestDeadline deadline = RequestDeadline.current();
+        return CompletableFuture.supplyAsync(() -> {
+            RequestDeadline.set(deadline);
+            try {
+                return query.get();
+            } finally {
+                RequestDeadline.clear();
+            }
+        }, bulkhead.executor);
+    }
+
+    public List<QueryExecutorStats> stats() {
+        List<QueryExecutorStats> stats = new ArrayList<>();
+        bulkheads.values().forEach(bulkhead -> stats.add(bulkhead.stats()));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkheads.values().forEach(bulkhead -> bulkhead.executor.shutdown());
+    }
+
+    private static class Bulkhead {
+        private final String name;
+        private final int queueCapacity;
+        private final LongAdder rejected = new LongAdder();
+        private final ThreadPoolExecutor executor;
+
+        Bulkhead(String name, int threads, int queueCapacity) {
+            this.name = name;
+            this.queueCapacity = queueCapacity;
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "query-" + name + "-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, pool) -> {
+                        rejected.increment();
+                        throw new RejectedExecutionException(name + " 쿼리 풀이 꽉 찼습니다.");
+                    });
+            //한가할 때는 스레드를 들고 있지 않는다.
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        QueryExecutorStats stats() {
+            QueryExecutorStats stats = new QueryExecutorStats();
+            stats.setName(name);
+            stats.setMaxThreads(executor.getMaximumPoolSize());
+            stats.setActiveThreads(executor.getActiveCount());
+            stats.setQueued(executor.getQueue().size());
+            stats.setQueueCapacity(queueCapacity);
+            stats.setCompleted(executor.getCompletedTaskCount());
+            stats.setRejected(rejected.sum());
+            return stats;
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.startup.ReadinessGate;
+import study.querydsl.startup.StartupTimings;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
@@ -14,17 +20,59 @@ import javax.persistence.PersistenceContext;
 //application.yml 참고 이건 src의 application.yml이 있고 test 폴더 아래 application.yml의 profile은 test이다.
 @Profile("local")
 //스프링 빈 등록
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class InitMember {
 
+    private static final String SEED_TASK = "init-member";
+
     private final InitMemberService initMemberService;
+    private final ReadinessGate readinessGate;
+    private final StartupTimings startupTimings;
+
+    //sync: @PostConstruct에서 바로 넣는다. background: 기동이 끝난 뒤 별도 스레드에서 넣는다(fast-start).
+    @Value("${init-member.mode:sync}")
+    private String mode;
 
     //트랜젝션 부분을 분리해줘야 한다 왜냐면 PostConstruct와 Transactional 어노테이션을 같이
     //쓰지 못하기 때문이다.
     @PostConstruct
     public void init(){
+        if (isBackground()) {
+            //데이터가 다 들어갈 때까지 readiness를 막아둔다.
+            readinessGate.hold(SEED_TASK);
+            return;
+        }
         initMemberService.init();
+        startupTimings.mark("seed-done");
+    }
+
+    /**
+     * 컨텍스트가 다 뜨고 나서 데이터를 넣기 때문에 데이터 양이 늘어도 기동 시간은 그대로다.
+     * 그동안 /hello와 liveness는 응답하고 readiness만 REFUSING_TRAFFIC이다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initInBackground() {
+        if (!isBackground()) {
+            return;
+        }
+        Thread seeder = new Thread(() -> {
+            try {
+                initMemberService.init();
+                startupTimings.mark("seed-done");
+            } catch (RuntimeException e) {
+                log.error("샘플 데이터 초기화 실패", e);
+            } finally {
+                readinessGate.release(SEED_TASK);
+            }
+        }, SEED_TASK);
+        seeder.setDaemon(true);
+        seeder.start();
+    }
+
+    private boolean isBackground() {
+        return "background".equalsIgnoreCase(mode);
     }
 
     @Component
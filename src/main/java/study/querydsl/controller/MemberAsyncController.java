@@ -0,0 +1,77 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.async.QueryExecutorStats;
+import study.querydsl.async.QueryExecutors;
+import study.querydsl.dto.ChangeCursor;
+import study.querydsl.dto.MemberChangesDto;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberChangeRepository;
+import study.querydsl.repository.MemberCountEstimator;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberSearchCoalescer;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * MemberController와 같은 기능인데 쿼리를 QueryExecutors의 엔드포인트별 풀에서 돌린다.
+ * Tomcat 스레드는 CompletableFuture를 돌려주고 바로 빠지니까 느린 검색이 쌓여도 /hello 같은 요청은 계속 받는다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class MemberAsyncController {
+
+    private final QueryExecutors queryExecutors;
+    private final MemberSearchCoalescer memberSearchCoalescer;
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberCountEstimator memberCountEstimator;
+    private final MemberChangeRepository memberChangeRepository;
+
+    @GetMapping("/v1/async/members")
+    public CompletableFuture<List<MemberTeamDto>> searchMember(MemberSearchCondition condition) {
+        return queryExecutors.submit("search", () -> memberSearchCoalescer.search(condition));
+    }
+
+    @GetMapping("/v2/async/members")
+    public CompletableFuture<Page<MemberTeamDto>> searchMemberPage(MemberSearchCondition condition, Pageable pageable,
+                                                                  @RequestParam(defaultValue = "false") boolean approximateTotal) {
+        return queryExecutors.submit("search-page", () -> approximateTotal
+                ? memberCountEstimator.searchPage(condition, pageable)
+                : memberJpaRepository.searchPage(condition, pageable));
+    }
+
+    @GetMapping("/v1/async/members/changes")
+    public CompletableFuture<MemberChangesDto> memberChanges(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "1000") int limit) {
+        ChangeCursor changeCursor = MemberController.changeCursor(since, cursor, limit);
+        return queryExecutors.submit("changes", () -> memberChangeRepository.findChanges(changeCursor, limit));
+    }
+
+    //엔드포인트별 최대 스레드, 실행 중, 큐 대기, 완료, 거절 수
+    @GetMapping("/admin/query-executors")
+    public List<QueryExecutorStats> executorStats() {
+        return queryExecutors.stats();
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public Map<String, String> rejected(RejectedExecutionException e) {
+        return Map.of("error", e.getMessage());
+    }
+}
@@ -1,22 +1,149 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import study.querydsl.dto.ChangeCursor;
+import study.querydsl.dto.MemberBatchQuery;
+import study.querydsl.dto.MemberBatchResponse;
+import study.querydsl.dto.MemberChangesDto;
+import study.querydsl.dto.MemberField;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberAgeAccumulator;
+import study.querydsl.repository.MemberBatchSearch;
+import study.querydsl.repository.MemberChangeRepository;
+import study.querydsl.repository.MemberCountEstimator;
 import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberLeaderboard;
+import study.querydsl.repository.MemberSearchCoalescer;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
+    private final MemberChangeRepository memberChangeRepository;
+    private final MemberSearchCoalescer memberSearchCoalescer;
+    private final MemberCountEstimator memberCountEstimator;
+    private final MemberBatchSearch memberBatchSearch;
+    private final MemberAgeAccumulator memberAgeAccumulator;
+    private final MemberLeaderboard memberLeaderboard;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition){
-        return memberJpaRepository.search(condition);
+        //같은 조건으로 동시에 들어온 요청은 SQL 한 번으로 합친다.
+        return memberSearchCoalescer.search(condition);
+    }
+
+    /**
+     * 필요한 필드만 고른다. 예) /v1/members?fields=memberId,username&ageGoe=20
+     * 고른 필드만 select/직렬화하고, 팀 이름이 필요 없으면 team join도 안 한다.
+     */
+    @GetMapping(value = "/v1/members", params = "fields")
+    public List<Map<String, Object>> searchMemberFields(MemberSearchCondition condition, @RequestParam String fields) {
+        Set<MemberField> selected;
+        try {
+            selected = MemberField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return memberJpaRepository.searchFields(condition, selected);
+    }
+
+    /**
+     * 여러 검색을 한 번에. 결과는 요청 순서대로 tag와 함께 돌려준다.
+     * 예) [{"tag":"a","condition":{"teamName":"teamA"}},{"tag":"b","condition":{"teamName":"teamB"}}]
+     */
+    @PostMapping("/v1/members/batch-search")
+    public MemberBatchResponse batchSearch(@RequestBody List<MemberBatchQuery> queries) {
+        try {
+            return memberBatchSearch.search(queries);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    //바로 update 하지 않고 모았다가 반영한다. 돌려주는 나이에는 아직 반영 안 된 값도 들어 있다.
+    //없는 회원이면 값을 쌓지 않고 404. (확인한 뒤에 지워진 회원의 값은 flush 때 버려진다)
+    @PostMapping("/v1/members/{id}/age/increment")
+    public Integer incrementAge(@PathVariable Long id, @RequestParam(defaultValue = "1") int delta) {
+        Integer age = memberAgeAccumulator.age(id);
+        if (age == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        memberAgeAccumulator.increment(id, delta);
+        return age + delta;
+    }
+
+    //나이 많은 순 top-N. DB를 매번 정렬하지 않고 메모리 순위표에서 바로 준다. teamId가 없으면 전체
+    @GetMapping("/v1/members/oldest")
+    public List<MemberTeamDto> oldestMembers(@RequestParam(required = false) Long teamId) {
+        return memberLeaderboard.top(teamId);
+    }
+
+    @GetMapping("/admin/member-age/increments")
+    public Map<String, Long> ageIncrementStats() {
+        return memberAgeAccumulator.stats();
+    }
+
+    //executed: 실제로 SQL을 실행한 횟수, coalesced: 다른 요청의 결과를 같이 받은 횟수
+    @GetMapping("/admin/member-search/coalescing")
+    public Map<String, Long> coalescingMetrics() {
+        return memberSearchCoalescer.metrics();
+    }
+
+    /**
+     * 페이징 검색. 예) /v2/members?page=0&size=20&teamName=teamA
+     * approximateTotal=true면 전체 건수를 캐시/테이블 통계에서 가져올 수 있고, 그때는 totalEstimated가 true다.
+     */
+    @GetMapping("/v2/members")
+    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable,
+                                              @RequestParam(defaultValue = "false") boolean approximateTotal) {
+        if (approximateTotal) {
+            return memberCountEstimator.searchPage(condition, pageable);
+        }
+        return memberJpaRepository.searchPage(condition, pageable);
+    }
+
+    /**
+     * 바뀐 회원/팀과 삭제된 id만 돌려준다. 처음에는 since(없으면 처음부터), 그 다음부터는 응답의 nextCursor를 cursor로 넘긴다.
+     * 예) /v1/members/changes?since=2026-10-19T10:15:30.123456
+     *     /v1/members/changes?cursor=2026-10-19T10:15:31.5_42~2026-10-19T10:15:30_7~1970-01-01T00:00_0
+     */
+    @GetMapping("/v1/members/changes")
+    public MemberChangesDto memberChanges(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return memberChangeRepository.findChanges(changeCursor(since, cursor, limit), limit);
+    }
+
+    static ChangeCursor changeCursor(LocalDateTime since, String cursor, int limit) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit은 1 이상이어야 합니다.");
+        }
+        if (cursor == null) {
+            return ChangeCursor.since(since);
+        }
+        try {
+            return ChangeCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
     }
 }
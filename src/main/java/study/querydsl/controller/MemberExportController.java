@@ -0,0 +1,38 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.export.ExportResult;
+import study.querydsl.export.MemberExportJob;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+@RestController
+@RequiredArgsConstructor
+public class MemberExportController {
+
+    private final MemberExportJob memberExportJob;
+
+    @Value("${member.export.dir:./export}")
+    private String exportDir;
+
+    /**
+     * 예) POST /admin/members/export?name=daily&teamName=teamA&resume=true
+     * {member.export.dir}/{name}/members.csv, members.mtc 가 만들어진다.
+     */
+    @PostMapping("/admin/members/export")
+    public ExportResult export(@RequestParam String name,
+                               @RequestParam(defaultValue = "false") boolean resume,
+                               MemberSearchCondition condition) throws IOException {
+        //경로 조작을 막기 위해 이름은 영문, 숫자, -, _ 만 허용한다.
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("export name은 영문, 숫자, -, _ 만 쓸 수 있습니다: " + name);
+        }
+        return memberExportJob.export(condition, Paths.get(exportDir, name), resume);
+    }
+}
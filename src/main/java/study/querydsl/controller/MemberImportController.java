@@ -0,0 +1,39 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import study.querydsl.importer.ImportResult;
+import study.querydsl.importer.MemberCsvImporter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequiredArgsConstructor
+public class MemberImportController {
+
+    private final MemberCsvImporter memberCsvImporter;
+
+    /**
+     * 본문을 그대로 스트리밍으로 받는다. 파일을 임시 저장하지 않아서 제일 빠르다.
+     * curl -X POST -H "Content-Type: text/csv" --data-binary @members.csv localhost:8083/v1/members/import
+     */
+    @PostMapping(value = "/v1/members/import", consumes = "text/csv")
+    public ImportResult importCsv(HttpServletRequest request) throws IOException {
+        return memberCsvImporter.importCsv(request.getInputStream());
+    }
+
+    /**
+     * curl -F file=@members.csv localhost:8083/v1/members/import
+     */
+    @PostMapping(value = "/v1/members/import", consumes = "multipart/form-data")
+    public ImportResult importMultipart(@RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return memberCsvImporter.importCsv(in);
+        }
+    }
+}
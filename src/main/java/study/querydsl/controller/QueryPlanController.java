@@ -0,0 +1,19 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.query.QueryPlanMonitor;
+import study.querydsl.query.QueryPlanStats;
+
+@RestController
+@RequiredArgsConstructor
+public class QueryPlanController {
+
+    private final QueryPlanMonitor queryPlanMonitor;
+
+    @GetMapping("/admin/query-plans")
+    public QueryPlanStats queryPlans() {
+        return queryPlanMonitor.stats();
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.slowquery.SlowQuery;
+import study.querydsl.slowquery.SlowQueryListener;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class SlowQueryController {
+
+    private final SlowQueryListener slowQueryListener;
+
+    //최근 것부터
+    @GetMapping("/admin/slow-queries")
+    public List<SlowQuery> slowQueries(@RequestParam(defaultValue = "50") int limit) {
+        return slowQueryListener.recent(limit);
+    }
+}
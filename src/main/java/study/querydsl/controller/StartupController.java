@@ -0,0 +1,21 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.startup.StartupTimings;
+
+import java.util.Map;
+
+@RestController
+@RequiredArgsConstructor
+public class StartupController {
+
+    private final StartupTimings startupTimings;
+
+    //단계 이름 -> JVM 기동 후 경과 ms
+    @GetMapping("/admin/startup")
+    public Map<String, Long> startup() {
+        return startupTimings.phases();
+    }
+}
@@ -0,0 +1,11 @@
+package study.querydsl.deadline;
+
+/**
+ * 요청 deadline이 지났거나 클라이언트가 끊겨서 쿼리를 실행하지 않았다(또는 취소했다).
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,33 @@
+package study.querydsl.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * deadline 초과, DB 쿼리 타임아웃은 500 대신 504와 함께 얼마를 줬는지 알려준다.
+ * @Repository 빈에서 나면 스프링이 org.springframework.dao.QueryTimeoutException으로 바꿔서 던진다.
+ */
+@RestControllerAdvice
+public class DeadlineExceptionHandler {
+
+    @ExceptionHandler({DeadlineExceededException.class,
+            javax.persistence.QueryTimeoutException.class,
+            org.springframework.dao.QueryTimeoutException.class})
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    public Map<String, Object> deadlineExceeded(RuntimeException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", "DEADLINE_EXCEEDED");
+        body.put("message", e instanceof DeadlineExceededException ? e.getMessage() : "쿼리가 제한 시간 안에 끝나지 않았습니다.");
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline != null) {
+            body.put("budgetMs", deadline.budgetMillis());
+        }
+        body.put("hint", "조건을 좁히거나 " + RequestDeadlineFilter.TIMEOUT_HEADER + " 헤더로 시간을 늘려보세요.");
+        return body;
+    }
+}
@@ -0,0 +1,27 @@
+package study.querydsl.deadline;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 요청 스레드에서 나가는 JdbcTemplate 쿼리(MemberColumnReader, MemberAgeAccumulator.age 등)에도 요청 deadline을 건다.
+ * 이 빈이 있으면 스프링 부트가 기본 JdbcTemplate을 만들지 않는다.
+ * deadline이 없는 스레드(백그라운드 flush 등)에서는 그냥 JdbcTemplate이다.
+ */
+@Component
+public class DeadlineJdbcTemplate extends JdbcTemplate {
+
+    public DeadlineJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        RequestDeadline.applyTo(stmt);
+    }
+}
@@ -0,0 +1,155 @@
+package study.querydsl.deadline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import javax.persistence.Query;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 요청 하나가 쓸 수 있는 시간. RequestDeadlineFilter가 요청 스레드에 걸어두고,
+ * 쿼리를 만들 때마다 남은 시간을 타임아웃으로 건다.
+ * - Querydsl select, update, delete: GuardedJPAQuery, GuardedJPAQueryFactory
+ * - em.createQuery 등 직접 만든 쿼리: applyTo(Query)
+ * - JdbcTemplate: DeadlineJdbcTemplate
+ * QueryExecutors로 넘어간 비동기 쿼리도 같은 deadline을 들고 간다.
+ */
+@Slf4j
+public class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long budgetMillis;
+    private final long expiresAtNanos;
+    private volatile boolean cancelled;
+    //지금 쿼리를 실행 중인(또는 마지막으로 실행한) 세션. 클라이언트가 끊기면 이 세션의 쿼리를 취소한다.
+    private volatile Session session;
+
+    public RequestDeadline(long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+        this.expiresAtNanos = System.nanoTime() + budgetMillis * 1_000_000;
+    }
+
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public static void set(RequestDeadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public long budgetMillis() {
+        return budgetMillis;
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (expiresAtNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 쿼리를 보내기 직전에 부른다. 이미 시간이 다 됐거나 취소됐으면 DB에 가지 않는다.
+     */
+    public void checkRemaining() {
+        if (cancelled) {
+            throw new DeadlineExceededException("클라이언트 연결이 끊겨서 쿼리를 취소했습니다.");
+        }
+        if (remainingMillis() == 0) {
+            throw new DeadlineExceededException("요청 제한 시간(" + budgetMillis + "ms)이 지났습니다.");
+        }
+    }
+
+    /**
+     * 지금 스레드에 deadline이 있으면 남은 시간을 쿼리 타임아웃 힌트로 건다. 체이닝할 수 있게 query를 그대로 돌려준다.
+     * 하이버네이트는 ms 힌트를 반올림해서 초 단위 JDBC timeout으로 바꾼다. 0초가 되면 타임아웃이 아예 없어지니까
+     * 초 단위로 올림해서 넣는다.
+     */
+    public static <Q extends Query> Q applyTo(Q query) {
+        RequestDeadline deadline = current();
+        if (deadline == null) {
+            return query;
+        }
+        deadline.checkRemaining();
+        long timeoutMillis = deadline.remainingSeconds() * 1000;
+        //하이버네이트는 Integer나 String만 받는다.
+        query.setHint("javax.persistence.query.timeout", (int) Math.min(Integer.MAX_VALUE, timeoutMillis));
+        deadline.register(query.unwrap(Session.class));
+        return query;
+    }
+
+    /**
+     * JDBC Statement에 남은 시간을 건다. 트랜잭션 타임아웃 등으로 이미 더 짧게 걸려 있으면 그대로 둔다.
+     */
+    public static void applyTo(Statement statement) throws SQLException {
+        RequestDeadline deadline = current();
+        if (deadline == null) {
+            return;
+        }
+        deadline.checkRemaining();
+        int seconds = (int) Math.min(Integer.MAX_VALUE, deadline.remainingSeconds());
+        int current = statement.getQueryTimeout();
+        if (current == 0 || current > seconds) {
+            statement.setQueryTimeout(seconds);
+        }
+    }
+
+    /**
+     * 다른 요청이 실행 중인 결과(SingleFlight)를 남은 시간만큼만 기다린다.
+     * 실패는 CompletableFuture.join()처럼 CompletionException으로 감싸서 던진다.
+     */
+    public <V> V await(CompletableFuture<V> future) {
+        checkRemaining();
+        try {
+            return future.get(remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("요청 제한 시간(" + budgetMillis + "ms)이 지났습니다.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeadlineExceededException("다른 요청의 결과를 기다리다가 인터럽트됐습니다.");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private long remainingSeconds() {
+        return (remainingMillis() + 999) / 1000;
+    }
+
+    public void register(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * 다른 스레드(서블릿 AsyncListener)에서 부른다. 실행 중인 JDBC Statement가 있으면 cancel된다.
+     */
+    public void cancel() {
+        cancelled = true;
+        Session running = session;
+        if (running == null) {
+            return;
+        }
+        try {
+            running.cancelQuery();
+        } catch (RuntimeException e) {
+            //이미 끝나서 닫힌 세션이면 취소할 것도 없다.
+            log.debug("쿼리 취소 실패: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package study.querydsl.deadline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 요청마다 deadline을 정한다.
+ * - X-Request-Timeout-Ms 헤더가 있으면 그 값 (max-ms를 넘을 수는 없다)
+ * - 없으면 request-deadline.endpoints에 등록된 경로별 값, 그것도 없으면 default-ms
+ * - request-deadline.exempt에 등록된 경로(export, import 같은 배치)는 deadline을 걸지 않는다.
+ *
+ * 비동기 엔드포인트는 클라이언트가 끊기거나 async 타임아웃이 나면 실행 중인 쿼리를 취소한다.
+ * 동기 엔드포인트는 서블릿이 연결 끊김을 알려주지 않으니 deadline(쿼리 타임아웃)으로만 끊는다.
+ */
+@Slf4j
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final long defaultMillis;
+    private final long maxMillis;
+    private final Map<String, Long> endpointMillis;
+    private final List<String> exempt;
+
+    public RequestDeadlineFilter(@Value("${request-deadline.default-ms:10000}") long defaultMillis,
+                                 @Value("${request-deadline.max-ms:60000}") long maxMillis,
+                                 @Value("#{${request-deadline.endpoints:{:}}}") Map<String, Long> endpointMillis,
+                                 @Value("${request-deadline.exempt:}") List<String> exempt) {
+        this.defaultMillis = defaultMillis;
+        this.maxMillis = maxMillis;
+        this.endpointMillis = endpointMillis;
+        this.exempt = exempt;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return exempt.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        RequestDeadline deadline = new RequestDeadline(budgetMillis(request));
+        RequestDeadline.set(deadline);
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new CancelOnError(deadline));
+            }
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    long budgetMillis(HttpServletRequest request) {
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (header != null) {
+            try {
+                return Math.min(Math.max(1, Long.parseLong(header.trim())), maxMillis);
+            } catch (NumberFormatException e) {
+                log.debug("{} 헤더 값이 숫자가 아닙니다: {}", TIMEOUT_HEADER, header);
+            }
+        }
+        return endpointMillis.getOrDefault(request.getRequestURI(), defaultMillis);
+    }
+
+    private static class CancelOnError implements AsyncListener {
+        private final RequestDeadline deadline;
+
+        CancelOnError(RequestDeadline deadline) {
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            deadline.cancel();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            deadline.cancel();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * /v1/members/changes 의 이어받기 위치. 회원, 팀, 삭제 흔적 목록마다 (마지막 시각, 마지막 id)를 따로 들고 있다.
+ * 같은 시각에 찍힌 행이 limit보다 많아도 id로 이어서 받으니까 같은 자리를 맴돌지 않는다.
+ *
+ * 문자열로는 "시각_id~시각_id~시각_id" (회원~팀~삭제) 이고 URL에 그대로 넣을 수 있다.
+ */
+@Getter
+@AllArgsConstructor
+public class ChangeCursor {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final Position member;
+    private final Position team;
+    private final Position tombstone;
+
+    /**
+     * since 시각 이후(같은 시각은 제외)부터. since가 null이면 처음부터
+     */
+    public static ChangeCursor since(LocalDateTime since) {
+        Position start = since == null ? new Position(EPOCH, 0L) : new Position(since, Long.MAX_VALUE);
+        return new ChangeCursor(start, start, start);
+    }
+
+    public static ChangeCursor parse(String value) {
+        String[] parts = value.split("~");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("잘못된 cursor: " + value);
+        }
+        return new ChangeCursor(Position.parse(parts[0]), Position.parse(parts[1]), Position.parse(parts[2]));
+    }
+
+    @Override
+    public String toString() {
+        return member + "~" + team + "~" + tombstone;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Position {
+        private final LocalDateTime time;
+        private final Long id;
+
+        static Position parse(String value) {
+            int separator = value.lastIndexOf('_');
+            try {
+                return new Position(LocalDateTime.parse(value.substring(0, separator)),
+                        Long.parseLong(value.substring(separator + 1)));
+            } catch (DateTimeParseException | IndexOutOfBoundsException | NumberFormatException e) {
+                throw new IllegalArgumentException("잘못된 cursor: " + value, e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return time + "_" + id;
+        }
+    }
+}
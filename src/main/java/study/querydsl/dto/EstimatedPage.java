@@ -0,0 +1,24 @@
+package study.querydsl.dto;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * totalElements가 정확한 count가 아니라 캐시나 테이블 통계에서 가져온 추정치일 수 있는 페이지.
+ * totalEstimated가 true면 화면에서 "약 N건" 처럼 보여주면 된다.
+ */
+public class EstimatedPage<T> extends PageImpl<T> {
+
+    private final boolean totalEstimated;
+
+    public EstimatedPage(List<T> content, Pageable pageable, long total, boolean totalEstimated) {
+        super(content, pageable, total);
+        this.totalEstimated = totalEstimated;
+    }
+
+    public boolean isTotalEstimated() {
+        return totalEstimated;
+    }
+}
@@ -0,0 +1,13 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+/**
+ * /v1/members/batch-search 요청 하나. tag는 응답에서 어느 검색의 결과인지 알아보는 용도다.
+ */
+@Data
+public class MemberBatchQuery {
+
+    private String tag;
+    private MemberSearchCondition condition = new MemberSearchCondition();
+}
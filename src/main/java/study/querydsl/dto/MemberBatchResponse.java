@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MemberBatchResponse {
+
+    //요청 순서 그대로
+    private List<MemberBatchResult> results;
+    private int totalRows;
+    //실제로 실행한 SQL 수 (합치기 전 검색 수보다 작을 수 있다)
+    private int queries;
+}
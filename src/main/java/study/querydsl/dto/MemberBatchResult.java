@@ -0,0 +1,16 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class MemberBatchResult {
+
+    private String tag;
+    private List<MemberTeamDto> members;
+    //다른 검색과 SQL 하나로 합쳐서 실행했다.
+    private boolean merged;
+    //배치 전체 행 수 상한에 걸려서 잘렸다.
+    private boolean truncated;
+}
@@ -0,0 +1,20 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * /v1/members/changes 응답. 다음 요청에는 nextCursor를 cursor로 넘기면 된다.
+ */
+@Data
+public class MemberChangesDto {
+
+    private List<MemberTeamDto> members;
+    private List<TeamDto> teams;
+    private List<Long> deletedMemberIds;
+    private List<Long> deletedTeamIds;
+    private String nextCursor;
+    //limit에 걸려서 아직 남은 변경이 있다.
+    private boolean hasMore;
+}
@@ -0,0 +1,69 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.types.Expression;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * /v1/members?fields=username,age 로 고를 수 있는 MemberTeamDto 필드.
+ * teamId는 member 테이블의 FK(team_id)라서 team join 없이 나온다. teamName만 join이 필요하다.
+ */
+public enum MemberField {
+
+    MEMBER_ID("memberId", member.id, false),
+    USERNAME("username", member.username, false),
+    AGE("age", member.age, false),
+    TEAM_ID("teamId", member.team.id, false),
+    TEAM_NAME("teamName", team.name, true);
+
+    private final String fieldName;
+    private final Expression<?> expression;
+    private final boolean needsTeamJoin;
+
+    MemberField(String fieldName, Expression<?> expression, boolean needsTeamJoin) {
+        this.fieldName = fieldName;
+        this.expression = expression;
+        this.needsTeamJoin = needsTeamJoin;
+    }
+
+    public String fieldName() {
+        return fieldName;
+    }
+
+    public Expression<?> expression() {
+        return expression;
+    }
+
+    public boolean needsTeamJoin() {
+        return needsTeamJoin;
+    }
+
+    /**
+     * "username, teamName" -> [USERNAME, TEAM_NAME]. 순서는 요청한 순서대로, 중복은 한 번만.
+     */
+    public static Set<MemberField> parse(String fields) {
+        Set<MemberField> result = new LinkedHashSet<>();
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            result.add(Arrays.stream(values())
+                    .filter(field -> field.fieldName.equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("알 수 없는 필드: " + trimmed
+                            + " (가능한 값: " + Arrays.stream(values()).map(MemberField::fieldName)
+                            .collect(Collectors.joining(", ")) + ")")));
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("fields가 비어 있습니다.");
+        }
+        return result;
+    }
+}
@@ -7,6 +7,8 @@ public class MemberSearchCondition {
     //회원명, 팀명, 나이(ageGoe, ageLoe)
 
     private String username;
+    //true면 username을 대소문자/악센트 무시하고 비교한다. (member.normalized_username 인덱스 사용)
+    private boolean usernameIgnoreCase;
     private String teamName;
     //나이가 크거나 같거나
     private Integer ageGoe;
@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+
+@Data
+public class TeamDto {
+
+    private Long teamId;
+    private String teamName;
+
+    @QueryProjection
+    public TeamDto(Long teamId, String teamName) {
+        this.teamId = teamId;
+        this.teamName = teamName;
+    }
+}
@@ -0,0 +1,36 @@
+package study.querydsl.entity;
+
+import lombok.Getter;
+
+import javax.persistence.Column;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import java.time.LocalDateTime;
+
+/**
+ * 등록일, 수정일을 엔티티 write 시점에 채운다.
+ * /v1/members/changes 가 lastModifiedDate를 watermark로 써서 바뀐 행만 돌려준다.
+ * QueryDSL bulk update는 이 콜백을 안 거치니까 update 절에서 lastModifiedDate를 같이 set 해줘야 한다.
+ * (MemberJpaRepository.bulkAgePlus 참고)
+ */
+@Getter
+@MappedSuperclass
+public abstract class BaseTimeEntity {
+
+    @Column(updatable = false)
+    private LocalDateTime createdDate;
+    private LocalDateTime lastModifiedDate;
+
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime now = LocalDateTime.now();
+        createdDate = now;
+        lastModifiedDate = now;
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        lastModifiedDate = LocalDateTime.now();
+    }
+}
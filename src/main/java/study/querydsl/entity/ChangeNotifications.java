@@ -0,0 +1,31 @@
+package study.querydsl.entity;
+
+import java.util.function.Supplier;
+
+/**
+ * TeamChangeListener, MemberChangeListener 알림을 잠깐 끈다.
+ * 샤드(MemberShard)의 EntityManagerFactory도 같은 엔티티 클래스라 리스너가 그대로 붙는데,
+ * 구독자(TeamNameCache, MemberLeaderboard)는 메인 DB 기준이라 샤드에 쓴 변경은 알리면 안 된다.
+ * 엔티티 콜백은 쓰는 스레드에서 돌기 때문에 ThreadLocal로 막는다.
+ */
+public final class ChangeNotifications {
+
+    private static final ThreadLocal<Boolean> MUTED = ThreadLocal.withInitial(() -> false);
+
+    private ChangeNotifications() {
+    }
+
+    public static <T> T muted(Supplier<T> work) {
+        boolean previous = MUTED.get();
+        MUTED.set(true);
+        try {
+            return work.get();
+        } finally {
+            MUTED.set(previous);
+        }
+    }
+
+    static boolean isMuted() {
+        return MUTED.get();
+    }
+}
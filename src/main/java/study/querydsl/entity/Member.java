@@ -1,24 +1,38 @@
 package study.querydsl.entity;
 
 import lombok.AccessLevel;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.proxy.HibernateProxyHelper;
 
 import javax.persistence.*;
 
-@Data
+//equals/hashCode가 지연 로딩인 team을 건드리지 않도록 @Data 대신 getter/setter만 쓴다. (Team 참고)
+@Getter
+@Setter
 @Entity
 //기본 생성자 protected 설정
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 //toString에서는 연관관계 필드는 안 건드리는 게 좋다 무한루프에 빠질 수 있기 때문이다.
 @ToString(of = {"id", "username", "age"})
-public class Member {
+//delta sync(/v1/members/changes)에서 lastModifiedDate로 조회한다.
+//대소문자 무시 검색(MemberSearchCondition.usernameIgnoreCase)은 normalizedUsername 인덱스를 탄다.
+@Table(indexes = {
+        @Index(name = "idx_member_last_modified_date", columnList = "lastModifiedDate"),
+        @Index(name = "idx_member_normalized_username", columnList = "normalizedUsername")})
+//나이 순위표(MemberLeaderboard)를 갱신한다.
+@EntityListeners(MemberChangeListener.class)
+public class Member extends BaseTimeEntity {
     @Id
     @GeneratedValue
     @Column(name="member_id")
     private Long id;
     private String username;
+    //username이 바뀔 때 같이 바뀐다. 직접 바꾸지 못하게 setter는 안 만든다.
+    @Setter(AccessLevel.NONE)
+    private String normalizedUsername;
     private int age;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -34,15 +48,39 @@ public class Member {
     }
 
     public Member(String username, int age, Team team) {
-        this.username = username;
+        setUsername(username);
         this.age = age;
         if(team!=null){
             changeTeam(team);
         }
     }
 
+    public void setUsername(String username) {
+        this.username = username;
+        this.normalizedUsername = UsernameNormalizer.normalize(username);
+    }
+
+    //팀 회원이 10만 명이어도 team.members를 로딩하지 않는다. (Team.addMember 참고)
     private void changeTeam(Team team) {
         this.team=team;
-        team.getMembers().add(this);
+        team.addMember(this);
+    }
+
+    //Team.equals와 같은 규칙: id가 같으면 같다.
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || HibernateProxyHelper.getClassWithoutInitializingProxy(o) != Member.class) {
+            return false;
+        }
+        Long id = getId();
+        return id != null && id.equals(((Member) o).getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Member.class.hashCode();
     }
 }
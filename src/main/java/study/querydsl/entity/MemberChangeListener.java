@@ -0,0 +1,69 @@
+package study.querydsl.entity;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Member가 저장/수정/삭제되면 구독자(MemberLeaderboard)에게 알린다.
+ * TeamChangeListener와 같은 이유로 스프링 빈 대신 static 구독 목록을 쓴다.
+ *
+ * bulk update/delete, JDBC insert는 엔티티 콜백을 안 거치니까 그런 코드는 bulkChanged()를 직접 불러야 한다.
+ * JDBC로 바꿨어도 어떤 회원인지 알면 커밋한 뒤에 membersChanged()로 그 회원만 알린다.
+ */
+public class MemberChangeListener {
+
+    public interface Subscriber {
+
+        void saved(Member member);
+
+        void removed(Member member);
+
+        //어떤 회원이 바뀌었는지 모를 때
+        void bulkChanged();
+
+        //엔티티 콜백 없이 바뀌고 이미 커밋된 회원들
+        void membersChanged(Collection<Long> memberIds);
+    }
+
+    private static final List<Subscriber> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+
+    public static void subscribe(Subscriber subscriber) {
+        SUBSCRIBERS.add(subscriber);
+    }
+
+    public static void unsubscribe(Subscriber subscriber) {
+        SUBSCRIBERS.remove(subscriber);
+    }
+
+    public static void bulkChanged() {
+        SUBSCRIBERS.forEach(Subscriber::bulkChanged);
+    }
+
+    public static void membersChanged(Collection<Long> memberIds) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        SUBSCRIBERS.forEach(subscriber -> subscriber.membersChanged(memberIds));
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void memberSaved(Member member) {
+        if (ChangeNotifications.isMuted()) {
+            return;
+        }
+        SUBSCRIBERS.forEach(subscriber -> subscriber.saved(member));
+    }
+
+    @PostRemove
+    public void memberRemoved(Member member) {
+        if (ChangeNotifications.isMuted()) {
+            return;
+        }
+        SUBSCRIBERS.forEach(subscriber -> subscriber.removed(member));
+    }
+}
@@ -1,34 +1,84 @@
 package study.querydsl.entity;
 
 import lombok.AccessLevel;
-import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.proxy.HibernateProxyHelper;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.OneToMany;
+import javax.persistence.Table;
 import java.util.ArrayList;
 import java.util.List;
 
-@Data
+//@Data의 equals/hashCode는 지연 로딩 필드(team, members)까지 비교해서 컬렉션을 통째로 로딩하거나 서로를 타고 무한루프에 빠진다.
+//그래서 getter/setter만 쓰고 equals/hashCode는 아래에서 id로 직접 정의한다.
+@Getter
+@Setter
 @Entity
 //기본 생성자 protected 설정
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 //toString에서는 연관관계 필드는 안 건드리는 게 좋다 무한루프에 빠질 수 있기 때문이다.
 @ToString(of = {"id", "name"})
-public class Team {
+@Table(indexes = @Index(name = "idx_team_last_modified_date", columnList = "lastModifiedDate"))
+//팀 이름 캐시(TeamNameCache)를 비운다.
+@EntityListeners(TeamChangeListener.class)
+public class Team extends BaseTimeEntity {
     @Id
     @GeneratedValue
     private Long id;
     private String name;
 
     //연관관계의 주인 설정, 여기가 연관관계의 주인이 아니라 연관관계의 주인은 Member의 team에 있다
+    //EXTRA: size()는 count 쿼리로, contains()는 존재 확인 쿼리로 답하고 컬렉션 전체는 로딩하지 않는다.
+    //회원 목록이 필요하면 TeamMemberRepository.findMembers로 잘라서 읽는다.
     @OneToMany(mappedBy="team")
+    @LazyCollection(LazyCollectionOption.EXTRA)
     private List<Member> members = new ArrayList<>();
 
     public Team(String name){
         this.name=name;
     }
+
+    /**
+     * 아직 로딩 안 된 컬렉션(mappedBy라 읽기 전용 쪽)에 add하면 하이버네이트가 로딩 없이 큐에 쌓아뒀다가
+     * 나중에 로딩될 때 합쳐준다. 이미 로딩된 경우에만 메모리에서 중복을 확인한다.
+     */
+    void addMember(Member member) {
+        if (Hibernate.isInitialized(members) && members.stream().anyMatch(m -> m == member)) {
+            return;
+        }
+        members.add(member);
+    }
+
+    /**
+     * 같은 행(id)이면 같은 엔티티다. 아직 persist 전(id == null)이면 자기 자신하고만 같다.
+     * 프록시와 비교해도 되도록 클래스는 프록시를 초기화하지 않고 꺼내서 비교하고, id는 getter로 읽는다.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || HibernateProxyHelper.getClassWithoutInitializingProxy(o) != Team.class) {
+            return false;
+        }
+        Long id = getId();
+        return id != null && id.equals(((Team) o).getId());
+    }
+
+    //persist 전후로 id가 바뀌어도 HashSet에서 못 찾는 일이 없도록 클래스 단위 상수를 쓴다.
+    @Override
+    public int hashCode() {
+        return Team.class.hashCode();
+    }
 }
@@ -0,0 +1,35 @@
+package study.querydsl.entity;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Team이 저장/수정/삭제되면 구독자(TeamNameCache)에게 알린다.
+ * 엔티티 리스너는 EntityManagerFactory를 만들 때(백그라운드 deferred bootstrap 포함) 생기니까
+ * 스프링 빈을 주입받지 않고 static 구독 목록으로 연결한다. 샤드에 쓸 때는 ChangeNotifications로 꺼둔다.
+ */
+public class TeamChangeListener {
+
+    private static final List<Runnable> SUBSCRIBERS = new CopyOnWriteArrayList<>();
+
+    public static void subscribe(Runnable subscriber) {
+        SUBSCRIBERS.add(subscriber);
+    }
+
+    public static void unsubscribe(Runnable subscriber) {
+        SUBSCRIBERS.remove(subscriber);
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void teamChanged(Team team) {
+        if (ChangeNotifications.isMuted()) {
+            return;
+        }
+        SUBSCRIBERS.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,38 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 삭제된 행의 흔적. delta sync를 받는 쪽이 지워진 것도 알 수 있게 남겨둔다.
+ */
+@Getter
+@Entity
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+@Table(indexes = @Index(name = "idx_tombstone_deleted_date", columnList = "deletedDate"))
+public class Tombstone {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+    //"Member", "Team"
+    private String entityName;
+    private Long entityId;
+    private LocalDateTime deletedDate;
+
+    public Tombstone(String entityName, Long entityId, LocalDateTime deletedDate) {
+        this.entityName = entityName;
+        this.entityId = entityId;
+        this.deletedDate = deletedDate;
+    }
+}
@@ -0,0 +1,29 @@
+package study.querydsl.entity;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 대소문자/악센트 무시 검색용 username. "José" -> "jose"
+ * 검색할 때 lower(username)처럼 컬럼에 함수를 씌우면 인덱스를 못 타니까, 저장할 때 미리 이 값으로 바꿔서
+ * member.normalized_username 컬럼에 넣어두고 검색어도 같은 방식으로 바꿔서 비교한다.
+ */
+public final class UsernameNormalizer {
+
+    //NFD로 분해했을 때 떨어져 나오는 결합 문자(악센트 등)
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private UsernameNormalizer() {
+    }
+
+    public static String normalize(String username) {
+        if (username == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(username, Normalizer.Form.NFD);
+        String folded = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+        //한글처럼 분해됐다가 결합 문자가 없는 글자는 다시 합쳐둔다.
+        return Normalizer.normalize(folded, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,16 @@
+package study.querydsl.export;
+
+import lombok.Data;
+
+@Data
+public class ExportResult {
+
+    //이어서 시작한 경우 이미 받아둔 행 수
+    private long resumedRows;
+    //이번 실행에서 쓴 행 수
+    private long exportedRows;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    private long csvBytes;
+    private long columnarBytes;
+}
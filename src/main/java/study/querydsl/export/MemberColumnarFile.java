@@ -0,0 +1,205 @@
+package study.querydsl.export;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * MemberTeamDto를 열(column) 단위로 묶어서 압축 저장하는 간단한 파일 포맷.
+ * 파일은 row group의 연속이고, row group 하나는 다음과 같다.
+ *
+ * [int rowCount]
+ * [int 길이][gzip] memberId   - long, 앞 값과의 차이(delta)로 저장
+ * [int 길이][gzip] username   - (int 길이, utf-8 바이트), null은 길이 -1
+ * [int 길이][gzip] age        - int
+ * [int 길이][gzip] teamId     - long, null은 Long.MIN_VALUE
+ * [int 길이][gzip] teamName   - 사전(dictionary) + 행마다 int 코드, null은 -1
+ *
+ * row group끼리 독립적이라 이어쓰기(resume)는 뒤에 row group을 덧붙이기만 하면 된다.
+ */
+public class MemberColumnarFile {
+
+    private static final long NULL_ID = Long.MIN_VALUE;
+
+    private final int rowGroupSize;
+    private final long[] memberIds;
+    private final String[] usernames;
+    private final int[] ages;
+    private final long[] teamIds;
+    private final String[] teamNames;
+    private int size;
+
+    public MemberColumnarFile(int rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+        this.memberIds = new long[rowGroupSize];
+        this.usernames = new String[rowGroupSize];
+        this.ages = new int[rowGroupSize];
+        this.teamIds = new long[rowGroupSize];
+        this.teamNames = new String[rowGroupSize];
+    }
+
+    /**
+     * @return row group이 꽉 찼으면 true. 이때 writeRowGroup을 불러줘야 한다.
+     */
+    public boolean add(MemberTeamDto dto) {
+        memberIds[size] = dto.getMemberId();
+        usernames[size] = dto.getUsername();
+        ages[size] = dto.getAge();
+        teamIds[size] = dto.getTeamId() != null ? dto.getTeamId() : NULL_ID;
+        teamNames[size] = dto.getTeamName();
+        size++;
+        return size == rowGroupSize;
+    }
+
+    public int pending() {
+        return size;
+    }
+
+    public void writeRowGroup(OutputStream out) throws IOException {
+        if (size == 0) {
+            return;
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(size);
+
+        writeColumn(data, column -> {
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                column.writeLong(memberIds[i] - previous);
+                previous = memberIds[i];
+            }
+        });
+        writeColumn(data, column -> {
+            for (int i = 0; i < size; i++) {
+                writeString(column, usernames[i]);
+            }
+        });
+        writeColumn(data, column -> {
+            for (int i = 0; i < size; i++) {
+                column.writeInt(ages[i]);
+            }
+        });
+        writeColumn(data, column -> {
+            for (int i = 0; i < size; i++) {
+                column.writeLong(teamIds[i]);
+            }
+        });
+        writeColumn(data, column -> {
+            //팀 이름은 종류가 적으니 사전으로 바꿔서 코드만 저장한다.
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> words = new ArrayList<>();
+            int[] codes = new int[size];
+            for (int i = 0; i < size; i++) {
+                codes[i] = teamNames[i] == null ? -1 : dictionary.computeIfAbsent(teamNames[i], name -> {
+                    words.add(name);
+                    return words.size() - 1;
+                });
+            }
+            column.writeInt(words.size());
+            for (String word : words) {
+                writeString(column, word);
+            }
+            for (int i = 0; i < size; i++) {
+                column.writeInt(codes[i]);
+            }
+        });
+        data.flush();
+
+        size = 0;
+        //다 쓴 문자열은 GC가 가져가도록 비운다.
+        Arrays.fill(usernames, null);
+        Arrays.fill(teamNames, null);
+    }
+
+    /**
+     * 검증, 디버깅용. 파일 전체를 읽어서 행으로 돌려준다.
+     */
+    public static List<MemberTeamDto> readAll(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        List<MemberTeamDto> rows = new ArrayList<>();
+        while (true) {
+            int rowCount;
+            try {
+                rowCount = data.readInt();
+            } catch (EOFException e) {
+                return rows;
+            }
+            DataInputStream ids = readColumn(data);
+            DataInputStream names = readColumn(data);
+            DataInputStream ageColumn = readColumn(data);
+            DataInputStream teamIdColumn = readColumn(data);
+            DataInputStream teamNameColumn = readColumn(data);
+
+            String[] dictionary = new String[teamNameColumn.readInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = readString(teamNameColumn);
+            }
+            long previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                long memberId = previous + ids.readLong();
+                previous = memberId;
+                String username = readString(names);
+                int age = ageColumn.readInt();
+                long teamId = teamIdColumn.readLong();
+                int code = teamNameColumn.readInt();
+                rows.add(new MemberTeamDto(memberId, username, age,
+                        teamId == NULL_ID ? null : teamId,
+                        code < 0 ? null : dictionary[code]));
+            }
+        }
+    }
+
+    private interface ColumnWriter {
+        void write(DataOutputStream column) throws IOException;
+    }
+
+    private static void writeColumn(DataOutputStream out, ColumnWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream column = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            writer.write(column);
+        }
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    private static DataInputStream readColumn(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,225 @@
+package study.querydsl.export;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberJpaRepository.ageGoe;
+import static study.querydsl.repository.MemberJpaRepository.ageLoe;
+import static study.querydsl.repository.MemberJpaRepository.teamNameEq;
+import static study.querydsl.repository.MemberJpaRepository.usernameEq;
+
+/**
+ * member/team 조인 결과(MemberTeamDto)를 members.csv와 members.mtc(MemberColumnarFile)로 내보낸다.
+ *
+ * List로 한 번에 받지 않고 iterate()로 받는다. 하이버네이트에서는 forward-only ScrollableResults가 되고
+ * fetch size 만큼씩 JDBC에서 끌어오기 때문에 행이 몇천만 개여도 힙 사용량은 row group 하나 크기로 일정하다.
+ * DTO로 받으니 영속성 컨텍스트에도 쌓이지 않는다.
+ *
+ * row group 하나를 다 쓸 때마다 마지막 memberId와 파일 크기를 체크포인트로 남긴다.
+ * resume이면 체크포인트 이후에 쓰다 만 부분을 잘라내고 memberId > 마지막 id 부터 이어서 쓴다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MemberExportJob {
+
+    static final String CSV_FILE = "members.csv";
+    static final String COLUMNAR_FILE = "members.mtc";
+    static final String CHECKPOINT_FILE = "export.checkpoint";
+
+    private final JPAQueryFactory queryFactory;
+
+    @Value("${member.export.fetch-size:10000}")
+    private int fetchSize;
+    @Value("${member.export.row-group-size:65536}")
+    private int rowGroupSize;
+
+    @Transactional(readOnly = true)
+    public ExportResult export(MemberSearchCondition condition, Path dir, boolean resume) throws IOException {
+        Files.createDirectories(dir);
+        Path csvPath = dir.resolve(CSV_FILE);
+        Path columnarPath = dir.resolve(COLUMNAR_FILE);
+        Path checkpointPath = dir.resolve(CHECKPOINT_FILE);
+
+        Checkpoint checkpoint = resume && Files.exists(checkpointPath)
+                ? Checkpoint.load(checkpointPath)
+                : new Checkpoint();
+        if (checkpoint.rows > 0) {
+            //체크포인트 뒤에 쓰다 만 부분은 버린다.
+            truncate(csvPath, checkpoint.csvBytes);
+            truncate(columnarPath, checkpoint.columnarBytes);
+            log.info("[export] {} 행, memberId {} 이후부터 이어서 씁니다.", checkpoint.rows, checkpoint.lastMemberId);
+        } else {
+            Files.deleteIfExists(csvPath);
+            Files.deleteIfExists(columnarPath);
+        }
+
+        ExportResult result = new ExportResult();
+        result.setResumedRows(checkpoint.rows);
+        long start = System.nanoTime();
+        long exported = 0;
+
+        MemberColumnarFile columnar = new MemberColumnarFile(rowGroupSize);
+        try (FileOutputStream csvFile = new FileOutputStream(csvPath.toFile(), true);
+             FileOutputStream columnarFile = new FileOutputStream(columnarPath.toFile(), true);
+             Writer csv = new BufferedWriter(new OutputStreamWriter(csvFile, StandardCharsets.UTF_8), 1 << 16);
+             OutputStream columnarOut = new BufferedOutputStream(columnarFile, 1 << 16);
+             CloseableIterator<MemberTeamDto> rows = queryFactory
+                     .select(new QMemberTeamDto(
+                             member.id,
+                             member.username,
+                             member.age,
+                             team.id,
+                             team.name))
+                     .from(member)
+                     .leftJoin(member.team, team)
+                     .where(member.id.gt(checkpoint.lastMemberId),
+                             usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                             teamNameEq(condition.getTeamName()),
+                             ageGoe(condition.getAgeGoe()),
+                             ageLoe(condition.getAgeLoe()))
+                     //이어쓰기를 하려면 순서가 항상 같아야 한다.
+                     .orderBy(member.id.asc())
+                     .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                     .setHint(QueryHints.READ_ONLY, true)
+                     .iterate()) {
+
+            if (checkpoint.rows == 0) {
+                csv.write("memberId,username,age,teamId,teamName\n");
+            }
+            while (rows.hasNext()) {
+                MemberTeamDto row = rows.next();
+                writeCsv(csv, row);
+                exported++;
+                checkpoint.lastMemberId = row.getMemberId();
+                if (columnar.add(row)) {
+                    columnar.writeRowGroup(columnarOut);
+                    checkpoint.rows += rowGroupSize;
+                    checkpoint(checkpoint, csv, csvFile, columnarOut, columnarFile, checkpointPath);
+                    logThroughput(exported, start);
+                }
+            }
+            checkpoint.rows += columnar.pending();
+            columnar.writeRowGroup(columnarOut);
+            checkpoint(checkpoint, csv, csvFile, columnarOut, columnarFile, checkpointPath);
+            result.setCsvBytes(checkpoint.csvBytes);
+            result.setColumnarBytes(checkpoint.columnarBytes);
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        result.setExportedRows(exported);
+        result.setElapsedMillis(elapsedNanos / 1_000_000);
+        result.setRowsPerSecond(elapsedNanos == 0 ? 0 : exported * 1_000_000_000.0 / elapsedNanos);
+        log.info("[export] 완료 {}", result);
+        return result;
+    }
+
+    private static void writeCsv(Writer csv, MemberTeamDto row) throws IOException {
+        csv.write(String.valueOf(row.getMemberId()));
+        csv.write(',');
+        csv.write(csvField(row.getUsername()));
+        csv.write(',');
+        csv.write(String.valueOf(row.getAge()));
+        csv.write(',');
+        csv.write(row.getTeamId() != null ? String.valueOf(row.getTeamId()) : "");
+        csv.write(',');
+        csv.write(csvField(row.getTeamName()));
+        csv.write('\n');
+    }
+
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void checkpoint(Checkpoint checkpoint, Writer csv, FileOutputStream csvFile,
+                                   OutputStream columnarOut, FileOutputStream columnarFile,
+                                   Path checkpointPath) throws IOException {
+        csv.flush();
+        columnarOut.flush();
+        checkpoint.csvBytes = csvFile.getChannel().size();
+        checkpoint.columnarBytes = columnarFile.getChannel().size();
+        checkpoint.save(checkpointPath);
+    }
+
+    private static void logThroughput(long exported, long start) {
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        log.info("[export] {} 행, {} rows/s", exported, Math.round(exported / seconds));
+    }
+
+    private static void truncate(Path path, long size) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static class Checkpoint {
+        private long lastMemberId;
+        //체크포인트 시점까지 두 파일에 다 들어간 행 수
+        private long rows;
+        private long csvBytes;
+        private long columnarBytes;
+
+        static Checkpoint load(Path path) throws IOException {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            }
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.lastMemberId = Long.parseLong(properties.getProperty("lastMemberId"));
+            checkpoint.rows = Long.parseLong(properties.getProperty("rows"));
+            checkpoint.csvBytes = Long.parseLong(properties.getProperty("csvBytes"));
+            checkpoint.columnarBytes = Long.parseLong(properties.getProperty("columnarBytes"));
+            return checkpoint;
+        }
+
+        //임시 파일에 쓰고 바꿔치기해서 중간에 죽어도 체크포인트가 깨지지 않게 한다.
+        void save(Path path) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("lastMemberId", String.valueOf(lastMemberId));
+            properties.setProperty("rows", String.valueOf(rows));
+            properties.setProperty("csvBytes", String.valueOf(csvBytes));
+            properties.setProperty("columnarBytes", String.valueOf(columnarBytes));
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package study.querydsl.importer;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportResult {
+
+    private long lines;
+    private long importedRows;
+    //파싱 실패 + 실패한 배치에 들어 있던 행
+    private long failedRows;
+    private long batches;
+    private long failedBatches;
+    private long createdTeams;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+    //앞에서부터 member.import.max-errors 개까지만 담는다.
+    private List<String> errors = new ArrayList<>();
+}
@@ -0,0 +1,229 @@
+package study.querydsl.importer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.MemberChangeListener;
+import study.querydsl.entity.UsernameNormalizer;
+import study.querydsl.repository.TeamNameCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * username,age,teamName 형식의 CSV를 한 줄씩 읽어서 member 테이블에 JDBC batch insert 한다.
+ *
+ * - em.persist로 하나씩 넣으면 영속성 컨텍스트에 엔티티가 쌓이고 insert도 한 건씩 나간다.
+ *   여기서는 JPA를 거치지 않고 batch-size 만큼 모아서 한 번에 보내고 배치마다 커밋한다.
+ * - id는 insert 문 안에서 hibernate_sequence로 따기 때문에 JPA로 넣은 행과 id가 겹치지 않는다.
+ * - 팀 이름 -> team_id 는 메모리 Map으로 찾고, 없는 팀은 그때 만든다.
+ * - 잘못된 줄이나 실패한 배치는 기록만 하고 다음으로 넘어간다.
+ * - 읽는 버퍼와 배치 배열만 재사용하므로 파일 크기와 상관없이 힙 사용량이 일정하다.
+ */
+@Slf4j
+@Component
+public class MemberCsvImporter {
+
+    private static final String INSERT_MEMBER = "insert into member "
+            + "(member_id, username, normalized_username, age, team_id, created_date, last_modified_date) "
+            + "values (next value for hibernate_sequence, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TEAM = "insert into team "
+            + "(id, name, created_date, last_modified_date) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TeamNameCache teamNameCache;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final int maxErrors;
+
+    public MemberCsvImporter(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             TeamNameCache teamNameCache,
+                             @Value("${member.import.batch-size:5000}") int batchSize,
+                             @Value("${member.import.max-errors:100}") int maxErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.teamNameCache = teamNameCache;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maxErrors = maxErrors;
+    }
+
+    public ImportResult importCsv(InputStream in) throws IOException {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        Map<String, Long> teamIds = loadTeamIds();
+        Batch batch = new Batch(batchSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (lineNumber == 1 && line.startsWith("username")) {
+                continue; //헤더
+            }
+            if (line.isEmpty()) {
+                continue;
+            }
+            result.setLines(result.getLines() + 1);
+
+            List<String> fields = CsvLine.parse(line);
+            if (fields.size() < 2) {
+                fail(result, "line " + lineNumber + ": 필드가 부족합니다.");
+                continue;
+            }
+            int age;
+            try {
+                age = Integer.parseInt(fields.get(1).trim());
+            } catch (NumberFormatException e) {
+                fail(result, "line " + lineNumber + ": age가 숫자가 아닙니다. (" + fields.get(1) + ")");
+                continue;
+            }
+            String teamName = fields.size() > 2 ? fields.get(2) : null;
+            Long teamId = null;
+            if (hasText(teamName)) {
+                teamId = teamIds.get(teamName);
+                if (teamId == null) {
+                    teamId = createTeam(teamName);
+                    teamIds.put(teamName, teamId);
+                    result.setCreatedTeams(result.getCreatedTeams() + 1);
+                }
+            }
+
+            if (batch.add(fields.get(0), age, teamId, lineNumber)) {
+                flush(batch, result);
+            }
+        }
+        flush(batch, result);
+
+        long elapsedNanos = System.nanoTime() - start;
+        result.setElapsedMillis(elapsedNanos / 1_000_000);
+        result.setRowsPerSecond(elapsedNanos == 0 ? 0 : result.getImportedRows() * 1_000_000_000.0 / elapsedNanos);
+        log.info("[import] 완료 lines={}, imported={}, failed={}, {} rows/s",
+                result.getLines(), result.getImportedRows(), result.getFailedRows(), Math.round(result.getRowsPerSecond()));
+        return result;
+    }
+
+    private Map<String, Long> loadTeamIds() {
+        Map<String, Long> teamIds = new HashMap<>();
+        jdbcTemplate.query("select id, name from team", rs -> {
+            teamIds.putIfAbsent(rs.getString("name"), rs.getLong("id"));
+        });
+        return teamIds;
+    }
+
+    private Long createTeam(String name) {
+        return tx.execute(status -> {
+            Long id = jdbcTemplate.queryForObject("select next value for hibernate_sequence", Long.class);
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.update(INSERT_TEAM, id, name, now, now);
+            //엔티티 리스너를 안 거치니까 직접 비운다.
+            teamNameCache.invalidate();
+            return id;
+        });
+    }
+
+    private void flush(Batch batch, ImportResult result) {
+        if (batch.size == 0) {
+            return;
+        }
+        result.setBatches(result.getBatches() + 1);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            tx.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_MEMBER, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setString(1, batch.usernames[i]);
+                    //JDBC로 바로 넣으니까 엔티티(Member.setUsername) 대신 여기서 채운다.
+                    ps.setString(2, UsernameNormalizer.normalize(batch.usernames[i]));
+                    ps.setInt(3, batch.ages[i]);
+                    if (batch.teamIds[i] != null) {
+                        ps.setLong(4, batch.teamIds[i]);
+                    } else {
+                        ps.setNull(4, Types.BIGINT);
+                    }
+                    ps.setTimestamp(5, now);
+                    ps.setTimestamp(6, now);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return batch.size;
+                }
+            }));
+            result.setImportedRows(result.getImportedRows() + batch.size);
+            //엔티티 리스너를 안 거치니까 나이 순위표에 직접 알린다.
+            MemberChangeListener.bulkChanged();
+        } catch (RuntimeException e) {
+            //이 배치만 롤백되고 작업은 계속한다.
+            result.setFailedBatches(result.getFailedBatches() + 1);
+            result.setFailedRows(result.getFailedRows() + batch.size);
+            addError(result, "line " + batch.firstLine + "~" + batch.lastLine + ": 배치 실패 " + e.getMessage());
+            log.warn("[import] line {}~{} 배치 실패", batch.firstLine, batch.lastLine, e);
+        }
+        batch.clear();
+    }
+
+    private void fail(ImportResult result, String message) {
+        result.setFailedRows(result.getFailedRows() + 1);
+        addError(result, message);
+    }
+
+    private void addError(ImportResult result, String message) {
+        if (result.getErrors().size() < maxErrors) {
+            result.getErrors().add(message);
+        }
+    }
+
+    private static class Batch {
+        private final String[] usernames;
+        private final int[] ages;
+        private final Long[] teamIds;
+        private int size;
+        private long firstLine;
+        private long lastLine;
+
+        Batch(int capacity) {
+            usernames = new String[capacity];
+            ages = new int[capacity];
+            teamIds = new Long[capacity];
+        }
+
+        //꽉 차면 true
+        boolean add(String username, int age, Long teamId, long line) {
+            if (size == 0) {
+                firstLine = line;
+            }
+            lastLine = line;
+            usernames[size] = username;
+            ages[size] = age;
+            teamIds[size] = teamId;
+            size++;
+            return size == usernames.length;
+        }
+
+        void clear() {
+            Arrays.fill(usernames, 0, size, null);
+            Arrays.fill(teamIds, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package study.querydsl.query;
+
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.jpa.impl.JPAQuery;
+import study.querydsl.deadline.RequestDeadline;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * JPAQuery가 실제 javax.persistence.Query를 만드는 시점에 끼어들어서
+ * 템플릿 리터럴을 바인딩 파라미터로 바꾸고, 만들어진 JPQL을 QueryPlanMonitor에 기록한다.
+ * 요청 deadline이 있으면 남은 시간을 쿼리 타임아웃으로 건다.
+ */
+class GuardedJPAQuery<T> extends JPAQuery<T> {
+
+    private final QueryPlanMonitor monitor;
+
+    GuardedJPAQuery(EntityManager em, QueryPlanMonitor monitor) {
+        super(em);
+        this.monitor = monitor;
+    }
+
+    @Override
+    protected Query createQuery(QueryModifiers modifiers, boolean forCount) {
+        if (monitor.isNormalizeLiterals()) {
+            LiteralNormalizer.normalize(getMetadata());
+        }
+        Query query = super.createQuery(modifiers, forCount);
+        monitor.record(query.unwrap(org.hibernate.query.Query.class).getQueryString());
+        return RequestDeadline.applyTo(query);
+    }
+}
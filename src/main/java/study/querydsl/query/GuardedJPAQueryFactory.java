@@ -0,0 +1,66 @@
+package study.querydsl.query;
+
+import com.querydsl.core.types.EntityPath;
+import com.querydsl.jpa.JPAProvider;
+import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import study.querydsl.deadline.RequestDeadline;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+/**
+ * select(), selectFrom() 등은 전부 query()를 거쳐서 만들어지므로 query()만 바꿔치기하면 된다.
+ * update(), delete()는 execute() 안에서 em.createQuery를 바로 부르고 끼어들 곳이 없어서,
+ * 만든 Query에 요청 deadline을 걸어주는 EntityManager를 넘긴다.
+ */
+public class GuardedJPAQueryFactory extends JPAQueryFactory {
+
+    private final EntityManager em;
+    private final EntityManager deadlineAwareEm;
+    private final QueryPlanMonitor monitor;
+
+    public GuardedJPAQueryFactory(EntityManager em, QueryPlanMonitor monitor) {
+        super(em);
+        this.em = em;
+        this.deadlineAwareEm = deadlineAware(em);
+        this.monitor = monitor;
+    }
+
+    @Override
+    public JPAQuery<?> query() {
+        return new GuardedJPAQuery<Void>(em, monitor);
+    }
+
+    @Override
+    public JPAUpdateClause update(EntityPath<?> path) {
+        return new JPAUpdateClause(deadlineAwareEm, path, JPAProvider.getTemplates(em));
+    }
+
+    @Override
+    public JPADeleteClause delete(EntityPath<?> path) {
+        return new JPADeleteClause(deadlineAwareEm, path, JPAProvider.getTemplates(em));
+    }
+
+    //createQuery로 만든 Query에만 deadline을 건다. 나머지 메서드는 그대로 넘긴다.
+    private static EntityManager deadlineAware(EntityManager em) {
+        return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+                new Class<?>[]{EntityManager.class},
+                (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(em, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("createQuery") && result instanceof Query) {
+                        RequestDeadline.applyTo((Query) result);
+                    }
+                    return result;
+                });
+    }
+}
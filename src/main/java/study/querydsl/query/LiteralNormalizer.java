@@ -0,0 +1,68 @@
+package study.querydsl.query;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.support.ReplaceVisitor;
+import com.querydsl.core.types.ConstantImpl;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.TemplateExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Expressions.stringTemplate("function('replace', {0}, 'member', 'M')", member.username) 처럼
+ * 템플릿 문자열 안에 직접 써 넣은 리터럴을 {n} 인자로 빼서 파라미터 바인딩이 되게 바꾼다.
+ * 함수 이름('replace')은 바인딩하면 안 되니까 그대로 둔다.
+ * 숫자 리터럴은 cast({0} as decimal(10, 2))처럼 바인딩하면 안 되는 자리와 구분할 수 없어서 그대로 두고,
+ * QueryPlanMonitor가 numericLiteralQueryCount로 따로 보여준다.
+ *
+ * select 절의 파라미터는 DB에 따라 타입을 못 정해서 실패할 수 있으므로 where 절만 바꾼다.
+ */
+class LiteralNormalizer extends ReplaceVisitor<Void> {
+
+    private static final LiteralNormalizer INSTANCE = new LiteralNormalizer();
+
+    static void normalize(QueryMetadata metadata) {
+        Predicate where = metadata.getWhere();
+        if (where == null) {
+            return;
+        }
+        Predicate normalized = (Predicate) where.accept(INSTANCE, null);
+        if (normalized != where) {
+            metadata.clearWhere();
+            metadata.addWhere(normalized);
+        }
+    }
+
+    @Override
+    public Expression<?> visit(TemplateExpression<?> expr, Void context) {
+        Expression<?> visited = super.visit(expr, context);
+        if (!(visited instanceof TemplateExpression)) {
+            return visited;
+        }
+        TemplateExpression<?> template = (TemplateExpression<?>) visited;
+        String templateString = template.getTemplate().toString();
+        Matcher matcher = QueryPlanMonitor.STRING_LITERAL.matcher(templateString);
+        if (!matcher.find()) {
+            return template;
+        }
+
+        List<Object> args = new ArrayList<>(template.getArgs());
+        StringBuffer normalized = new StringBuffer();
+        do {
+            String literal = matcher.group();
+            String value = literal.substring(1, literal.length() - 1).replace("''", "'");
+            matcher.appendReplacement(normalized, "{" + args.size() + "}");
+            args.add(ConstantImpl.create(value));
+        } while (matcher.find());
+        matcher.appendTail(normalized);
+
+        if (template instanceof Predicate) {
+            return ExpressionUtils.predicateTemplate(normalized.toString(), args);
+        }
+        return ExpressionUtils.template(template.getType(), normalized.toString(), args);
+    }
+}
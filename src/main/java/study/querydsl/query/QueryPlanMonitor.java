@@ -0,0 +1,224 @@
+package study.querydsl.query;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JPQL 문자열이 몇 가지나 만들어지는지 지켜본다.
+ * 하이버네이트는 JPQL 문자열 하나당 query plan을 하나씩 캐시하기 때문에 리터럴이 JPQL에 그대로 박히면
+ * 값이 바뀔 때마다 새 plan이 생기고 캐시(기본 2048개)가 금방 밀려난다.
+ * 호출 위치(call site)별로 서로 다른 JPQL 개수를 세서 너무 많으면 경고를 남긴다.
+ *
+ * 모든 쿼리가 여기를 지나가니까 정규식 검사와 StackWalker는 처음 보는 JPQL에만 한다.
+ * 이미 본 JPQL은 Map 조회 한 번으로 끝난다. 같은 JPQL을 다른 위치에서 또 만들면 처음 위치에만 잡히는데,
+ * 찾으려는 건 새 JPQL을 계속 만들어내는 위치라서 상관없다.
+ *
+ * 하이버네이트 통계(Statistics)는 이 클래스만 켠다. 운영에서도 첫 쿼리 이후로는 계속 켜져 있고 아무도 끄지 않는다.
+ * 통계 값은 애플리케이션 전체가 같이 쓰므로 테스트도 clear()하거나 껐다 켜지 말고 시작 값과의 차이로 본다.
+ */
+@Slf4j
+@Component
+public class QueryPlanMonitor {
+
+    //function('replace', ...) 처럼 함수 이름으로 쓰이는 문자열은 리터럴로 치지 않는다.
+    static final Pattern STRING_LITERAL = Pattern.compile("(?<!function\\(\\s{0,4})'(?:[^']|'')*'");
+    private static final Pattern FUNCTION_NAME = Pattern.compile("function\\(\\s*'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w?:.])\\d+(?:\\.\\d+)?(?![\\w])");
+
+    //전체 JPQL을 끝없이 들고 있지 않도록 상한을 둔다.
+    private static final int MAX_TRACKED_PLANS = 10_000;
+    //상한을 넘은 뒤 새 JPQL은 이 중 하나만 호출 위치를 찾는다.
+    private static final int CALL_SITE_SAMPLE_RATE = 64;
+
+    static final int STRING_LITERALS = 1;
+    static final int NUMERIC_LITERALS = 2;
+
+    private final EntityManagerFactory emf;
+    private final int maxPlansPerCallSite;
+    private final int planCacheMaxSize;
+    private final boolean normalizeLiterals;
+
+    //JPQL -> 박혀 있는 리터럴 종류 (STRING_LITERALS | NUMERIC_LITERALS)
+    private final Map<String, Integer> knownPlans = new ConcurrentHashMap<>();
+    private final LongAdder untrackedPlans = new LongAdder();
+    private final Map<String, CallSite> callSites = new ConcurrentHashMap<>();
+    private final LongAdder queryCount = new LongAdder();
+    private final LongAdder literalQueryCount = new LongAdder();
+    private final LongAdder numericLiteralQueryCount = new LongAdder();
+    private volatile boolean statisticsEnabled;
+
+    public QueryPlanMonitor(EntityManagerFactory emf,
+                            @Value("${querydsl.plan-cache.max-plans-per-call-site:32}") int maxPlansPerCallSite,
+                            @Value("${spring.jpa.properties.hibernate.query.plan_cache_max_size:2048}") int planCacheMaxSize,
+                            @Value("${querydsl.plan-cache.normalize-literals:true}") boolean normalizeLiterals) {
+        this.emf = emf;
+        this.maxPlansPerCallSite = maxPlansPerCallSite;
+        this.planCacheMaxSize = planCacheMaxSize;
+        this.normalizeLiterals = normalizeLiterals;
+    }
+
+    /**
+     * hit/miss를 보려면 하이버네이트 통계가 켜져 있어야 한다.
+     * hibernate.generate_statistics로 켜면 세션마다 통계 로그가 찍히니까 여기서 직접 켠다.
+     * EntityManagerFactory가 백그라운드에서 만들어지는 경우(bootstrap-mode: deferred) 기동을 막지 않도록
+     * 첫 쿼리 때 한 번만 켜고, 그 뒤로는 켜져 있다고 본다.
+     */
+    private void enableStatistics() {
+        if (!statisticsEnabled) {
+            statistics().setStatisticsEnabled(true);
+            statisticsEnabled = true;
+        }
+    }
+
+    public boolean isNormalizeLiterals() {
+        return normalizeLiterals;
+    }
+
+    public void record(String jpql) {
+        enableStatistics();
+        queryCount.increment();
+        Integer literals = knownPlans.get(jpql);
+        if (literals == null) {
+            literals = literalKinds(jpql);
+            if (knownPlans.size() < MAX_TRACKED_PLANS) {
+                if (knownPlans.putIfAbsent(jpql, literals) == null) {
+                    recordCallSite(jpql);
+                }
+            } else {
+                untrackedPlans.increment();
+                if (untrackedPlans.sum() % CALL_SITE_SAMPLE_RATE == 0) {
+                    recordCallSite(jpql);
+                }
+            }
+        }
+        if (literals != 0) {
+            literalQueryCount.increment();
+        }
+        if ((literals & NUMERIC_LITERALS) != 0) {
+            numericLiteralQueryCount.increment();
+        }
+    }
+
+    private void recordCallSite(String jpql) {
+        String callSite = findCallSite();
+        CallSite site = callSites.computeIfAbsent(callSite, key -> new CallSite());
+        if (site.plans.size() <= maxPlansPerCallSite) {
+            site.plans.add(jpql);
+        }
+        if (site.plans.size() > maxPlansPerCallSite && site.warned.compareAndSet(false, true)) {
+            log.warn("{} 에서 서로 다른 JPQL이 {}개 넘게 만들어졌습니다. 리터럴 대신 파라미터 바인딩을 쓰세요. 예: {}",
+                    callSite, maxPlansPerCallSite, jpql);
+        }
+    }
+
+    /**
+     * JPQL 안에 박혀 있는 문자열/숫자 리터럴 개수
+     */
+    static int countLiterals(String jpql) {
+        String withoutFunctionNames = FUNCTION_NAME.matcher(jpql).replaceAll("function(");
+        Matcher strings = STRING_LITERAL.matcher(withoutFunctionNames);
+        return count(strings) + count(NUMERIC_LITERAL.matcher(strings.replaceAll("''")));
+    }
+
+    /**
+     * JPQL 안에 박혀 있는 리터럴 종류. 숫자 리터럴은 LiteralNormalizer가 바인딩으로 바꾸지 않으니 따로 센다.
+     * (cast({0} as decimal(10, 2))의 자릿수처럼 파라미터가 될 수 없는 자리가 있어서 건드리지 않는다)
+     */
+    static int literalKinds(String jpql) {
+        String withoutFunctionNames = FUNCTION_NAME.matcher(jpql).replaceAll("function(");
+        Matcher strings = STRING_LITERAL.matcher(withoutFunctionNames);
+        int kinds = strings.find() ? STRING_LITERALS : 0;
+        if (NUMERIC_LITERAL.matcher(strings.replaceAll("''")).find()) {
+            kinds |= NUMERIC_LITERALS;
+        }
+        return kinds;
+    }
+
+    private static int count(Matcher matcher) {
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    public int distinctPlansAt(String callSitePrefix) {
+        return callSites.entrySet().stream()
+                .filter(e -> e.getKey().startsWith(callSitePrefix))
+                .mapToInt(e -> e.getValue().plans.size())
+                .sum();
+    }
+
+    public QueryPlanStats stats() {
+        enableStatistics();
+        Statistics statistics = statistics();
+        long hits = statistics.getQueryPlanCacheHitCount();
+        long misses = statistics.getQueryPlanCacheMissCount();
+
+        QueryPlanStats stats = new QueryPlanStats();
+        stats.setQueryCount(queryCount.sum());
+        stats.setLiteralQueryCount(literalQueryCount.sum());
+        stats.setNumericLiteralQueryCount(numericLiteralQueryCount.sum());
+        stats.setDistinctPlans(knownPlans.size());
+        stats.setPlanCacheMaxSize(planCacheMaxSize);
+        stats.setPlanCacheHits(hits);
+        stats.setPlanCacheMisses(misses);
+        stats.setHitRatio(hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+        //하이버네이트는 eviction 수를 따로 안 준다. 서로 다른 plan 수보다 miss가 많으면 그만큼 밀려났다가 다시 만든 것이다.
+        stats.setEstimatedEvictions(Math.max(0, misses - knownPlans.size()));
+
+        Map<String, Integer> hotCallSites = new LinkedHashMap<>();
+        callSites.forEach((callSite, site) -> {
+            if (site.warned.get()) {
+                hotCallSites.put(callSite, site.plans.size());
+            }
+        });
+        stats.setHotCallSites(hotCallSites);
+        return stats;
+    }
+
+    private Statistics statistics() {
+        return emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * querydsl, hibernate, spring 프레임을 건너뛰고 처음 나오는 애플리케이션 코드 위치
+     */
+    private static String findCallSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> !isFrameworkFrame(f.getClassName()))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown"));
+    }
+
+    private static boolean isFrameworkFrame(String className) {
+        return className.equals(QueryPlanMonitor.class.getName())
+                || className.equals(GuardedJPAQuery.class.getName())
+                || className.startsWith("com.querydsl.")
+                || className.startsWith("org.hibernate.")
+                || className.startsWith("org.springframework.")
+                || className.startsWith("java.")
+                || className.startsWith("jdk.")
+                || className.startsWith("com.sun.")
+                || className.contains("$$");
+    }
+
+    private static class CallSite {
+        private final Set<String> plans = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean warned = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,23 @@
+package study.querydsl.query;
+
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+public class QueryPlanStats {
+
+    private long queryCount;
+    //JPQL에 리터럴이 박혀 있던 쿼리 수
+    private long literalQueryCount;
+    //그중 숫자 리터럴이 남아 있던 쿼리 수. 숫자는 자동으로 바인딩하지 않으니 호출하는 쪽에서 고쳐야 한다.
+    private long numericLiteralQueryCount;
+    private int distinctPlans;
+    private int planCacheMaxSize;
+    private long planCacheHits;
+    private long planCacheMisses;
+    private double hitRatio;
+    private long estimatedEvictions;
+    //plan을 너무 많이 만든 호출 위치 -> 서로 다른 JPQL 개수
+    private Map<String, Integer> hotCallSites;
+}
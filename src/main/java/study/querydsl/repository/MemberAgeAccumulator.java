@@ -0,0 +1,354 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.MemberChangeListener;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 회원 나이 +n 을 바로 update 하지 않고 메모리에 모았다가 한 번에 반영한다. (write-behind)
+ * 같은 회원에게 +1이 자주 들어오면 건마다 update가 나가고 같은 행 락을 두고 줄을 서게 되는데,
+ * 여기서는 회원별로 합쳐서 flush 때 회원당 update 한 번(JDBC batch)으로 끝낸다.
+ *
+ * - increment는 락 없이 CAS만 쓴다. 회원마다 카운터가 있고, 같은 회원을 여러 스레드가 동시에 올려서 부딪히면
+ *   그 회원만 스레드별 칸(stripe)으로 나눈다. (LongAdder와 같은 방식)
+ * - flush-interval 마다, 또는 밀린 회원 수가 flush-threshold를 넘으면 flush 한다. 종료할 때도 남은 걸 flush 한다.
+ * - age()는 DB 값에 아직 반영 안 된 값을 더해서 돌려준다. (read-your-writes)
+ * - flush는 호출한 쪽 트랜잭션과 상관없이 항상 새 트랜잭션에서 바로 커밋한다. age()가 커밋 시점을 알아야 맞는 값을 주기 때문이다.
+ * - 커밋한 뒤에 반영한 회원 id만 MemberChangeListener.membersChanged()로 알린다. 순위표를 통째로 버리지 않게 하려는 것이다.
+ *
+ * JDBC로 바로 update 하니까 이미 영속성 컨텍스트에 올라온 Member의 age는 바뀌지 않는다. (bulkAgePlus와 같다)
+ */
+@Slf4j
+@Component
+public class MemberAgeAccumulator {
+
+    private static final String UPDATE_AGE = "update member set age = age + ?, last_modified_date = ? where member_id = ?";
+    private static final String SELECT_AGE = "select age from member where member_id = ?";
+    private static final int BATCH_SIZE = 500;
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+    private static final int SPINS = 64;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final int flushThreshold;
+
+    private final Map<Long, Counter> pending = new ConcurrentHashMap<>();
+    //DB에 쓰고 있는 중(아직 커밋 전)인 값. age()가 이것도 더한다.
+    private volatile Map<Long, Long> flushing = Map.of();
+    //flush 단계. 4로 나눈 나머지가 0: 평소, 1: pending -> flushing 옮기는 중, 2: DB에 쓰는 중, 3: 커밋하는 중
+    private final AtomicLong flushState = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+
+    private final LongAdder increments = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder updatedRows = new LongAdder();
+    private final LongAdder droppedMembers = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    public MemberAgeAccumulator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                @Value("${member.age-increment.flush-interval:1s}") Duration flushInterval,
+                                @Value("${member.age-increment.flush-threshold:10000}") int flushThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        //바깥 트랜잭션에 참여하면 콜백이 끝나도 커밋이 안 돼서 age()가 덜 세고, 바깥이 롤백되면 값이 사라진다.
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flushThreshold = flushThreshold;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "member-age-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 종료할 때 밀린 값을 버리지 않도록 마지막으로 한 번 더 flush 한다.
+     * DataSource보다 먼저 정리되는 빈이라 여기서는 아직 DB를 쓸 수 있다.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    public void increment(Long memberId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        add(memberId, delta);
+        increments.increment();
+        if (pending.size() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    private void add(Long memberId, long delta) {
+        while (true) {
+            Counter counter = pending.computeIfAbsent(memberId, id -> new Counter());
+            if (counter.add(delta)) {
+                break;
+            }
+            //flush가 막 가져간 카운터면 치우고 새로 만든다.
+            pending.remove(memberId, counter);
+        }
+    }
+
+    /**
+     * 아직 DB에 안 간 값까지 더한 나이. 회원이 없으면 null
+     */
+    public Integer age(Long memberId) {
+        int waits = 0;
+        while (true) {
+            long state = flushState.get();
+            if (state % 4 == 1 || state % 4 == 3) {
+                //옮기는 중이거나 커밋 직전/직후에는 어디에 들어 있는지 알 수 없으니 끝날 때까지 기다린다.
+                backoff(waits++);
+                continue;
+            }
+            long delta = pendingDelta(memberId) + flushing.getOrDefault(memberId, 0L);
+            Integer age;
+            try {
+                age = jdbcTemplate.queryForObject(SELECT_AGE, Integer.class, memberId);
+            } catch (EmptyResultDataAccessException e) {
+                age = null;
+            }
+            if (flushState.get() == state) {
+                return age == null ? null : (int) (age + delta);
+            }
+        }
+    }
+
+    //옮기는 건 금방 끝나니까 처음 몇 번은 돌면서 기다리고, 길어지면(커밋이 느릴 때) 점점 길게 재운다.
+    private static void backoff(int waits) {
+        if (waits < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1_000L << Math.min(waits - SPINS, 10)));
+        }
+    }
+
+    /**
+     * 메모리에 쌓여 있는 값 (flush 중인 값은 빼고)
+     */
+    public long pendingDelta(Long memberId) {
+        Counter counter = pending.get(memberId);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * 밀린 값을 회원당 update 한 번으로 반영한다. 반영한 회원 수를 돌려준다.
+     * 호출한 스레드에 트랜잭션이 있어도 따로 새 트랜잭션에서 커밋한다. (바깥 트랜잭션이 롤백돼도 반영은 남는다)
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            flushRequested.set(false);
+            flushState.incrementAndGet();
+            Map<Long, Long> deltas = drain();
+            flushing = deltas;
+            if (deltas.isEmpty()) {
+                flushState.addAndGet(3);
+                return 0;
+            }
+            flushState.incrementAndGet();
+            int updated;
+            try {
+                updated = tx.execute(status -> {
+                    int rows = write(deltas);
+                    //이 콜백이 끝나면 바로 커밋된다.
+                    flushState.incrementAndGet();
+                    return rows;
+                });
+                flushes.increment();
+            } catch (RuntimeException e) {
+                //반영 못 한 값은 다시 쌓아 두고 다음 flush 때 보낸다.
+                failedFlushes.increment();
+                if (flushState.get() % 4 == 2) {
+                    flushState.incrementAndGet();
+                }
+                deltas.forEach(this::add);
+                throw e;
+            } finally {
+                flushing = Map.of();
+                flushState.incrementAndGet();
+            }
+            //age()를 붙잡지 않도록 flush 단계를 끝낸 뒤에 알린다. 알림 순서는 flushLock이 flush 순서대로 지켜준다.
+            MemberChangeListener.membersChanged(deltas.keySet());
+            return updated;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("회원 나이 flush 실패, 다음에 다시 시도합니다.", e);
+        }
+    }
+
+    private Map<Long, Long> drain() {
+        Map<Long, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<Long, Counter> entry : pending.entrySet()) {
+            long delta = entry.getValue().retire();
+            pending.remove(entry.getKey(), entry.getValue());
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        return deltas;
+    }
+
+    private int write(Map<Long, Long> deltas) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(Math.min(BATCH_SIZE, deltas.size()));
+        int updated = 0;
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            batch.add(new Object[]{entry.getValue(), now, entry.getKey()});
+            if (batch.size() == BATCH_SIZE) {
+                updated += send(batch);
+                batch.clear();
+            }
+        }
+        updated += send(batch);
+        //그 사이에 지워진 회원의 값은 버린다.
+        droppedMembers.add(deltas.size() - updated);
+        updatedRows.add(updated);
+        return updated;
+    }
+
+    private int send(List<Object[]> batch) {
+        int updated = 0;
+        if (batch.isEmpty()) {
+            return updated;
+        }
+        for (int count : jdbcTemplate.batchUpdate(UPDATE_AGE, batch)) {
+            //드라이버가 건수를 모르면 SUCCESS_NO_INFO(-2)를 준다.
+            updated += count < 0 ? 1 : count;
+        }
+        return updated;
+    }
+
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("increments", increments.sum());
+        stats.put("pendingMembers", (long) pending.size());
+        stats.put("flushes", flushes.sum());
+        stats.put("updatedRows", updatedRows.sum());
+        stats.put("droppedMembers", droppedMembers.sum());
+        stats.put("failedFlushes", failedFlushes.sum());
+        return stats;
+    }
+
+    /**
+     * 회원 한 명의 밀린 값. 평소에는 base 하나에 더하고, base CAS가 다른 스레드와 부딪혀서 실패하면
+     * 그때 스레드별 칸(cells)을 만들어서 나눠 더한다. 칸은 PAD 간격으로 띄워서 서로 캐시 라인을 같이 쓰지 않게 한다.
+     * flush가 가져간 칸은 RETIRED로 바꿔 두고, 거기에 더하려던 스레드는 새 카운터를 만든다.
+     * 그래서 flush와 increment가 겹쳐도 값이 사라지거나 두 번 세지지 않는다.
+     */
+    private static class Counter {
+        private static final long RETIRED = Long.MIN_VALUE;
+        //long 16개 = 128바이트. 캐시 라인 64바이트에 옆 라인까지 같이 가져오는 prefetch도 피한다.
+        private static final int PAD = 16;
+        private static final AtomicLongArray RETIRED_CELLS = new AtomicLongArray(0);
+        private static final AtomicInteger nextStripe = new AtomicInteger();
+        private static final ThreadLocal<Integer> stripe =
+                ThreadLocal.withInitial(() -> nextStripe.getAndIncrement() & (STRIPES - 1));
+
+        private final AtomicLong base = new AtomicLong();
+        private final AtomicReference<AtomicLongArray> cells = new AtomicReference<>();
+
+        boolean add(long delta) {
+            AtomicLongArray current = cells.get();
+            if (current == null) {
+                long value = base.get();
+                if (value == RETIRED) {
+                    return false;
+                }
+                if (base.compareAndSet(value, value + delta)) {
+                    return true;
+                }
+                //이미 retire 됐으면 RETIRED_CELLS로 바뀌어 있어서 아래에서 걸러진다.
+                cells.compareAndSet(null, new AtomicLongArray((STRIPES + 1) * PAD));
+                current = cells.get();
+            }
+            if (current == RETIRED_CELLS) {
+                return false;
+            }
+            //0번 칸은 배열 헤더와 붙어 있으니 한 칸 건너서 쓴다.
+            int i = (stripe.get() + 1) * PAD;
+            while (true) {
+                long value = current.get(i);
+                if (value == RETIRED) {
+                    return false;
+                }
+                if (current.compareAndSet(i, value, value + delta)) {
+                    return true;
+                }
+            }
+        }
+
+        long sum() {
+            long value = base.get();
+            long sum = value == RETIRED ? 0 : value;
+            AtomicLongArray current = cells.get();
+            if (current != null && current != RETIRED_CELLS) {
+                for (int s = 1; s <= STRIPES; s++) {
+                    value = current.get(s * PAD);
+                    if (value != RETIRED) {
+                        sum += value;
+                    }
+                }
+            }
+            return sum;
+        }
+
+        long retire() {
+            long value = base.getAndSet(RETIRED);
+            long sum = value == RETIRED ? 0 : value;
+            AtomicLongArray current = cells.getAndSet(RETIRED_CELLS);
+            if (current != null && current != RETIRED_CELLS) {
+                for (int s = 1; s <= STRIPES; s++) {
+                    value = current.getAndSet(s * PAD, RETIRED);
+                    if (value != RETIRED) {
+                        sum += value;
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+}
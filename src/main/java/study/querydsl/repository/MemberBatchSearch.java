@@ -0,0 +1,197 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberBatchQuery;
+import study.querydsl.dto.MemberBatchResponse;
+import study.querydsl.dto.MemberBatchResult;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 화면 하나에서 여러 조건으로 검색할 때 HTTP 요청/트랜잭션을 한 번으로 줄인다.
+ * - 전부 read-only 트랜잭션 하나(커넥션 하나)에서 실행한다.
+ * - 완전히 같은 조건은 한 번만 실행한다.
+ * - teamName만 다르고 나머지가 같은 조건들은 member.team_id in (...) SQL 하나로 합쳐서 실행하고 팀별로 나눠 준다.
+ * - 배치 전체에서 읽는 행 수는 max-rows를 넘지 않는다. 넘는 결과는 잘리고 truncated가 된다.
+ *   합친 SQL이 잘리면 남긴 마지막 행 뒤에 회원이 더 있는 팀의 검색만 truncated다. (그걸 보는 SQL이 하나 더 나간다)
+ * - queries는 실행한 SQL 수다. 없는 팀 이름처럼 SQL 없이 끝난 검색은 세지 않는다.
+ */
+@Component
+public class MemberBatchSearch {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final TeamNameCache teamNameCache;
+    private final TransactionTemplate readOnlyTx;
+    private final int maxQueries;
+    private final int maxRows;
+
+    public MemberBatchSearch(MemberJpaRepository memberJpaRepository, TeamNameCache teamNameCache,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${member.batch-search.max-queries:50}") int maxQueries,
+                             @Value("${member.batch-search.max-rows:10000}") int maxRows) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.teamNameCache = teamNameCache;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.maxQueries = maxQueries;
+        this.maxRows = maxRows;
+    }
+
+    public MemberBatchResponse search(List<MemberBatchQuery> queries) {
+        if (queries.isEmpty() || queries.size() > maxQueries) {
+            throw new IllegalArgumentException("검색은 1개 이상 " + maxQueries + "개 이하로 보내야 합니다. (" + queries.size() + "개)");
+        }
+        //요청 객체는 건드리지 않고 정리한 사본으로 검색한다.
+        List<MemberSearchCondition> conditions = new ArrayList<>(queries.size());
+        for (MemberBatchQuery query : queries) {
+            conditions.add(MemberSearchCoalescer.normalize(
+                    query.getCondition() == null ? new MemberSearchCondition() : query.getCondition()));
+        }
+        return readOnlyTx.execute(status -> execute(queries, conditions));
+    }
+
+    private MemberBatchResponse execute(List<MemberBatchQuery> queries, List<MemberSearchCondition> conditions) {
+        MemberBatchResult[] results = new MemberBatchResult[queries.size()];
+        RowBudget budget = new RowBudget(maxRows);
+        int executed = 0;
+        for (List<Integer> unit : group(conditions)) {
+            MemberSearchCondition first = conditions.get(unit.get(0));
+            Set<String> teamNames = unit.stream()
+                    .map(i -> conditions.get(i).getTeamName())
+                    .filter(name -> hasText(name))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            MemberSearchCondition withoutTeam = MemberSearchCoalescer.normalize(first);
+            withoutTeam.setTeamName(null);
+
+            if (teamNames.size() <= 1) {
+                //같은 조건끼리만 묶인 경우. 없는 팀 이름이면 SQL 없이 빈 결과다.
+                List<Long> teamIds = teamNames.isEmpty() ? null : teamNameCache.idsOf(teamNames.iterator().next());
+                boolean noTeam = teamIds != null && teamIds.isEmpty();
+                boolean skipped = noTeam || !budget.hasRemaining();
+                List<MemberTeamDto> rows = skipped
+                        ? new ArrayList<>()
+                        : memberJpaRepository.searchInTeams(withoutTeam, teamIds, budget.limit());
+                boolean truncated = !noTeam && (skipped || budget.consume(rows));
+                if (!skipped) {
+                    executed++;
+                }
+                for (Integer i : unit) {
+                    results[i] = result(queries.get(i).getTag(), rows, false, truncated);
+                }
+                continue;
+            }
+
+            Map<String, Set<Long>> idsByName = new LinkedHashMap<>();
+            Set<Long> allIds = new LinkedHashSet<>();
+            for (String teamName : teamNames) {
+                Set<Long> ids = new LinkedHashSet<>(teamNameCache.idsOf(teamName));
+                idsByName.put(teamName, ids);
+                allIds.addAll(ids);
+            }
+            boolean skipped = allIds.isEmpty() || !budget.hasRemaining();
+            List<MemberTeamDto> rows = skipped
+                    ? new ArrayList<>()
+                    : memberJpaRepository.searchInTeams(withoutTeam, allIds, budget.limit());
+            if (!skipped) {
+                executed++;
+            }
+            //잘렸으면 마지막으로 남긴 행 뒤에 회원이 더 있는 팀만 잘린 것이다. (결과는 id 순)
+            Set<Long> truncatedTeams;
+            if (skipped) {
+                truncatedTeams = allIds;
+            } else if (budget.consume(rows)) {
+                truncatedTeams = memberJpaRepository.teamIdsAfter(withoutTeam, allIds, rows.get(rows.size() - 1).getMemberId());
+                executed++;
+            } else {
+                truncatedTeams = Set.of();
+            }
+            for (Integer i : unit) {
+                Set<Long> ids = idsByName.get(conditions.get(i).getTeamName());
+                List<MemberTeamDto> mine = rows.stream()
+                        .filter(row -> ids.contains(row.getTeamId()))
+                        .collect(Collectors.toList());
+                boolean truncated = ids.stream().anyMatch(truncatedTeams::contains);
+                results[i] = result(queries.get(i).getTag(), mine, true, truncated);
+            }
+        }
+
+        MemberBatchResponse response = new MemberBatchResponse();
+        response.setResults(Arrays.asList(results));
+        response.setTotalRows(budget.used);
+        response.setQueries(executed);
+        return response;
+    }
+
+    /**
+     * 같이 실행할 검색들의 index 묶음. 요청 순서(묶음의 첫 index 순)대로 실행한다.
+     * teamName이 있으면 teamName을 뺀 나머지 조건으로, 없으면 조건 전체로 묶는다.
+     */
+    private static Collection<List<Integer>> group(List<MemberSearchCondition> conditions) {
+        Map<Object, List<Integer>> units = new LinkedHashMap<>();
+        for (int i = 0; i < conditions.size(); i++) {
+            MemberSearchCondition key = MemberSearchCoalescer.normalize(conditions.get(i));
+            Object unitKey = key;
+            if (hasText(key.getTeamName())) {
+                key.setTeamName(null);
+                unitKey = Arrays.asList("team", key);
+            }
+            units.computeIfAbsent(unitKey, k -> new ArrayList<>()).add(i);
+        }
+        return units.values();
+    }
+
+    private static MemberBatchResult result(String tag, List<MemberTeamDto> members, boolean merged, boolean truncated) {
+        MemberBatchResult result = new MemberBatchResult();
+        result.setTag(tag);
+        result.setMembers(members);
+        result.setMerged(merged);
+        result.setTruncated(truncated);
+        return result;
+    }
+
+    private static class RowBudget {
+        private final int max;
+        private int used;
+
+        RowBudget(int max) {
+            this.max = max;
+        }
+
+        boolean hasRemaining() {
+            return used < max;
+        }
+
+        //한 행 더 읽어서 넘쳤는지 본다.
+        long limit() {
+            return max - used + 1L;
+        }
+
+        /**
+         * rows를 남은 만큼만 남기고, 잘렸으면 true
+         */
+        boolean consume(List<MemberTeamDto> rows) {
+            int remaining = max - used;
+            boolean truncated = rows.size() > remaining;
+            if (truncated) {
+                rows.subList(remaining, rows.size()).clear();
+            }
+            used += rows.size();
+            return truncated;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.DateTimePath;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.ChangeCursor;
+import study.querydsl.dto.MemberChangesDto;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.TeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChangeListener;
+import study.querydsl.entity.Team;
+import study.querydsl.entity.Tombstone;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTombstone.tombstone;
+
+/**
+ * 마지막으로 받아간 위치(cursor) 이후에 바뀐 것만 돌려준다.
+ * 전부 lastModifiedDate/deletedDate 인덱스를 타기 때문에 비용이 테이블 크기가 아니라 변경량에 비례한다.
+ *
+ * lastModifiedDate는 커밋 시각이 아니라 엔티티를 쓴 시각이다. 먼저 찍고 늦게 커밋한 행은 그보다 뒤 시각의 행이
+ * 이미 전달된 다음에야 보일 수 있어서, 최근 settle-window 안에 찍힌 행은 아직 안 돌려주고 다음 요청으로 미룬다.
+ * settle-window보다 오래 걸리는 쓰기 트랜잭션의 변경은 놓칠 수 있다.
+ * (시퀀스로 버전을 매겨도 번호는 커밋 전에 받으니까 같은 문제가 생긴다.)
+ */
+@Repository
+public class MemberChangeRepository {
+
+    static final String MEMBER = "Member";
+    static final String TEAM = "Team";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final Duration settleWindow;
+
+    public MemberChangeRepository(EntityManager em, JPAQueryFactory queryFactory,
+                                  @Value("${member.changes.settle-window:5s}") Duration settleWindow) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.settleWindow = settleWindow;
+    }
+
+    public MemberChangesDto findChangesSince(LocalDateTime since, int limit) {
+        return findChanges(ChangeCursor.since(since), limit);
+    }
+
+    /**
+     * 목록(회원, 팀, 삭제 흔적)마다 (시각, id) 순으로 cursor 다음부터 limit개씩 읽는다.
+     * 같은 시각에 찍힌 행이 limit보다 많아도 id로 이어서 받는다. (bulk 연산은 한 시각으로 여러 행을 찍는다)
+     */
+    @Transactional(readOnly = true)
+    public MemberChangesDto findChanges(ChangeCursor cursor, int limit) {
+        LocalDateTime until = LocalDateTime.now().minus(settleWindow);
+
+        List<Member> members = queryFactory
+                .selectFrom(member)
+                .leftJoin(member.team, team).fetchJoin()
+                .where(after(member.lastModifiedDate, member.id, cursor.getMember()),
+                        member.lastModifiedDate.loe(until))
+                .orderBy(member.lastModifiedDate.asc(), member.id.asc())
+                .limit(limit)
+                .fetch();
+
+        List<Team> teams = queryFactory
+                .selectFrom(team)
+                .where(after(team.lastModifiedDate, team.id, cursor.getTeam()),
+                        team.lastModifiedDate.loe(until))
+                .orderBy(team.lastModifiedDate.asc(), team.id.asc())
+                .limit(limit)
+                .fetch();
+
+        List<Tombstone> tombstones = queryFactory
+                .selectFrom(tombstone)
+                .where(after(tombstone.deletedDate, tombstone.id, cursor.getTombstone()),
+                        tombstone.deletedDate.loe(until))
+                .orderBy(tombstone.deletedDate.asc(), tombstone.id.asc())
+                .limit(limit)
+                .fetch();
+
+        MemberChangesDto changes = new MemberChangesDto();
+        changes.setMembers(members.stream()
+                .map(m -> new MemberTeamDto(m.getId(), m.getUsername(), m.getAge(),
+                        m.getTeam() != null ? m.getTeam().getId() : null,
+                        m.getTeam() != null ? m.getTeam().getName() : null))
+                .collect(Collectors.toList()));
+        changes.setTeams(teams.stream()
+                .map(t -> new TeamDto(t.getId(), t.getName()))
+                .collect(Collectors.toList()));
+        changes.setDeletedMemberIds(deletedIds(tombstones, MEMBER));
+        changes.setDeletedTeamIds(deletedIds(tombstones, TEAM));
+
+        //목록마다 마지막으로 준 행이 다음 위치다. 안 받은 목록은 그대로 둔다.
+        ChangeCursor next = new ChangeCursor(
+                members.isEmpty() ? cursor.getMember() : position(members.get(members.size() - 1)),
+                teams.isEmpty() ? cursor.getTeam() : position(teams.get(teams.size() - 1)),
+                tombstones.isEmpty() ? cursor.getTombstone() : position(tombstones.get(tombstones.size() - 1)));
+        changes.setHasMore(members.size() >= limit || teams.size() >= limit || tombstones.size() >= limit);
+        changes.setNextCursor(next.toString());
+        return changes;
+    }
+
+    //(time, id) > (position.time, position.id)
+    private static BooleanExpression after(DateTimePath<LocalDateTime> time, NumberPath<Long> id, ChangeCursor.Position position) {
+        return time.gt(position.getTime())
+                .or(time.eq(position.getTime()).and(id.gt(position.getId())));
+    }
+
+    private static ChangeCursor.Position position(Member m) {
+        return new ChangeCursor.Position(m.getLastModifiedDate(), m.getId());
+    }
+
+    private static ChangeCursor.Position position(Team t) {
+        return new ChangeCursor.Position(t.getLastModifiedDate(), t.getId());
+    }
+
+    private static ChangeCursor.Position position(Tombstone t) {
+        return new ChangeCursor.Position(t.getDeletedDate(), t.getId());
+    }
+
+    /**
+     * 지울 때는 흔적을 남기고 지운다.
+     */
+    public void delete(Member target) {
+        em.persist(new Tombstone(MEMBER, target.getId(), LocalDateTime.now()));
+        em.remove(target);
+    }
+
+    public void delete(Team target) {
+        em.persist(new Tombstone(TEAM, target.getId(), LocalDateTime.now()));
+        em.remove(target);
+    }
+
+    /**
+     * bulk delete도 지워질 id를 먼저 뽑아서 흔적을 남긴다.
+     */
+    public long bulkDeleteMembersOlderThan(int age) {
+        List<Long> ids = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(member.age.gt(age))
+                .fetch();
+        LocalDateTime now = LocalDateTime.now();
+        for (Long id : ids) {
+            em.persist(new Tombstone(MEMBER, id, now));
+        }
+        em.flush();
+        long count = queryFactory
+                .delete(member)
+                .where(member.age.gt(age))
+                .execute();
+        MemberChangeListener.bulkChanged();
+        return count;
+    }
+
+    private static List<Long> deletedIds(List<Tombstone> tombstones, String entityName) {
+        return tombstones.stream()
+                .filter(t -> entityName.equals(t.getEntityName()))
+                .map(Tombstone::getEntityId)
+                .collect(Collectors.toList());
+    }
+}
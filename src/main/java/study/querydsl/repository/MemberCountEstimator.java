@@ -0,0 +1,145 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import study.querydsl.deadline.DeadlineExceededException;
+import study.querydsl.deadline.RequestDeadline;
+import study.querydsl.dto.EstimatedPage;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.support.SingleFlight;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 넓은 조건의 페이징 검색은 content보다 count(*)가 더 오래 걸린다. 화면 페이징에는 대략적인 전체 건수로 충분하니
+ * approximateTotal 모드에서는 count를 매번 세지 않고 아래 순서로 가져온다.
+ * 1. 조건별 count 캐시(ttl 동안 유효)에 exact-threshold 이상인 값이 있으면 그 값 (추정치)
+ * 2. 조건이 하나도 없으면 DB의 테이블 통계(행 수 추정치)가 exact-threshold 이상일 때 그 값 (추정치)
+ * 3. 나머지는 정확한 count를 세고 캐시에 넣는다. exact-threshold보다 작은 결과는 세는 비용이 싸니까 항상 정확하게 준다.
+ * ttl이 지난 항목은 다음 요청 때 다시 센다. 같은 조건이 동시에 몰려도 count는 한 번만 돈다.
+ */
+@Slf4j
+@Component
+public class MemberCountEstimator {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final EntityManager em;
+    private final Duration ttl;
+    private final long exactThreshold;
+    private final int maxEntries;
+
+    private final Map<MemberSearchCondition, CachedCount> cache = new ConcurrentHashMap<>();
+    private final SingleFlight<MemberSearchCondition, Long> exactCounts = new SingleFlight<>();
+    private volatile boolean tableStatisticsSupported = true;
+
+    public MemberCountEstimator(MemberJpaRepository memberJpaRepository, EntityManager em,
+                                @Value("${member.count.ttl:60s}") Duration ttl,
+                                @Value("${member.count.exact-threshold:10000}") long exactThreshold,
+                                @Value("${member.count.max-entries:1000}") int maxEntries) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.em = em;
+        this.ttl = ttl;
+        this.exactThreshold = exactThreshold;
+        this.maxEntries = maxEntries;
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        MemberSearchCondition key = MemberSearchCoalescer.normalize(condition);
+        boolean[] estimated = new boolean[1];
+        Page<MemberTeamDto> page = memberJpaRepository.searchPage(key, pageable, () -> {
+            Long approximate = approximateCount(key);
+            if (approximate != null) {
+                estimated[0] = true;
+                return approximate;
+            }
+            return exactCount(key);
+        });
+        //count를 생략한 페이지(마지막 페이지 등)는 total이 정확하다.
+        return new EstimatedPage<>(page.getContent(), pageable, page.getTotalElements(), estimated[0]);
+    }
+
+    /**
+     * 추정치로 충분하면 그 값을, 정확하게 세야 하면 null
+     */
+    Long approximateCount(MemberSearchCondition key) {
+        CachedCount cached = cache.get(key);
+        if (cached != null && !cached.isExpired(ttl) && cached.count >= exactThreshold) {
+            return cached.count;
+        }
+        if (isUnfiltered(key)) {
+            Long rows = tableRowEstimate();
+            if (rows != null && rows >= exactThreshold) {
+                return rows;
+            }
+        }
+        return null;
+    }
+
+    long exactCount(MemberSearchCondition key) {
+        return exactCounts.execute(key, () -> {
+            long count = memberJpaRepository.count(key);
+            if (cache.size() >= maxEntries) {
+                cache.values().removeIf(c -> c.isExpired(ttl));
+            }
+            //조건 조합이 너무 많으면 더는 캐시하지 않는다. (만료된 게 빠지면 다시 들어간다)
+            if (cache.size() < maxEntries) {
+                cache.put(key, new CachedCount(count, System.nanoTime()));
+            }
+            return count;
+        });
+    }
+
+    /**
+     * H2가 관리하는 member 테이블 행 수 추정치. 지원하지 않는 DB면 null을 돌려서 정확한 count로 넘어간다.
+     */
+    private Long tableRowEstimate() {
+        if (!tableStatisticsSupported) {
+            return null;
+        }
+        try {
+            Object rows = RequestDeadline.applyTo(em.createNativeQuery(
+                            "select row_count_estimate from information_schema.tables where upper(table_name) = 'MEMBER'"))
+                    .getSingleResult();
+            return rows == null ? null : ((Number) rows).longValue();
+        } catch (DeadlineExceededException e) {
+            //요청 시간이 다 된 것뿐이니 통계를 못 쓰는 DB로 치지 않는다.
+            throw e;
+        } catch (RuntimeException e) {
+            tableStatisticsSupported = false;
+            log.info("테이블 통계를 읽지 못해 정확한 count를 사용합니다: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public int cachedEntries() {
+        return cache.size();
+    }
+
+    private static boolean isUnfiltered(MemberSearchCondition key) {
+        return !hasText(key.getUsername()) && !hasText(key.getTeamName())
+                && key.getAgeGoe() == null && key.getAgeLoe() == null;
+    }
+
+    private static class CachedCount {
+        private final long count;
+        private final long countedAtNanos;
+
+        CachedCount(long count, long countedAtNanos) {
+            this.count = count;
+            this.countedAtNanos = countedAtNanos;
+        }
+
+        boolean isExpired(Duration ttl) {
+            return System.nanoTime() - countedAtNanos > ttl.toNanos();
+        }
+    }
+}
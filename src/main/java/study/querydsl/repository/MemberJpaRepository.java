@@ -0,0 +1,496 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.deadline.RequestDeadline;
+import study.querydsl.dto.MemberField;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChangeListener;
+import study.querydsl.entity.UsernameNormalizer;
+import study.querydsl.support.TwoPhasePaging;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@Repository
+public class MemberJpaRepository {
+
+    /**
+     * in 절에 들어가는 파라미터 개수의 상한. 2의 거듭제곱으로 맞춰둬야 아래 padding과 같이 쓸 때
+     * 만들어지는 in 절 크기가 1, 2, 4 ... 512 로 딱 떨어진다.
+     */
+    static final int MAX_IN_CLAUSE_SIZE = 512;
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TeamNameCache teamNameCache;
+    //member.sharding.enabled=true 일 때만 있다. save, search, searchPage, count는 샤드로 보낸다.
+    private final ShardedMemberRepository shards;
+
+    //QuerydslApplication에 등록한 JPAQueryFactory 빈을 주입받는다.
+    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory, TeamNameCache teamNameCache,
+                               Optional<ShardedMemberRepository> shards) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.teamNameCache = teamNameCache;
+        this.shards = shards.orElse(null);
+    }
+
+    public void save(Member member) {
+        if (shards != null) {
+            shards.save(member);
+            return;
+        }
+        em.persist(member);
+    }
+
+    public Optional<Member> findById(Long id) {
+        Member findMember = em.find(Member.class, id);
+        return Optional.ofNullable(findMember);
+    }
+
+    public List<Member> findAll() {
+        return RequestDeadline.applyTo(em.createQuery("select m from Member m", Member.class))
+                .getResultList();
+    }
+
+    public List<Member> findAll_Querydsl() {
+        return queryFactory
+                .selectFrom(member)
+                .fetch();
+    }
+
+    public List<Member> findByUsername(String username) {
+        return RequestDeadline.applyTo(em.createQuery("select m from Member m where m.username = :username", Member.class))
+                .setParameter("username", username)
+                .getResultList();
+    }
+
+    public List<Member> findByUsername_Querydsl(String username) {
+        return queryFactory
+                .selectFrom(member)
+                .where(member.username.eq(username))
+                .fetch();
+    }
+
+    /**
+     * bulk 연산은 @PreUpdate를 안 거치기 때문에 lastModifiedDate를 직접 같이 바꿔줘야
+     * /v1/members/changes에 잡힌다. 실행 후에는 영속성 컨텍스트를 비워야 안전하다.
+     * 엔티티 리스너도 안 거치니까 나이 순위표에는 직접 알린다.
+     */
+    public long bulkAgePlus(int age) {
+        long count = queryFactory
+                .update(member)
+                .set(member.age, member.age.add(1))
+                .set(member.lastModifiedDate, LocalDateTime.now())
+                .where(member.age.goe(age))
+                .execute();
+        em.flush();
+        em.clear();
+        MemberChangeListener.bulkChanged();
+        return count;
+    }
+
+    /**
+     * 여러 id를 한 번에 조회한다. findById를 루프로 돌리면 id 개수만큼 쿼리가 나가고,
+     * member.id.in(ids)를 그대로 쓰면 리스트 크기마다 다른 쿼리가 만들어져서 하이버네이트의
+     * query plan cache가 크기별로 하나씩 쌓인다.
+     * 그래서 ids를 MAX_IN_CLAUSE_SIZE 단위로 자르고, 각 조각을 2의 거듭제곱 크기로 채워서(padding)
+     * in 절 모양이 몇 가지로만 나오게 한다.
+     * 결과는 입력 순서대로 담긴 Map이고, 없는 id는 빠진다.
+     */
+    public Map<Long, Member> findAllByIds(Collection<Long> ids) {
+        return findAllByIds(ids, chunk -> queryFactory
+                .selectFrom(member)
+                .where(member.id.in(chunk))
+                .fetch(), Member::getId);
+    }
+
+    /**
+     * findAllByIds와 같은데 엔티티 대신 MemberTeamDto로 바로 뽑는다.
+     */
+    public Map<Long, MemberTeamDto> findAllByIdsAsDto(Collection<Long> ids) {
+        return findAllByIds(ids, chunk -> queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(chunk))
+                .fetch(), MemberTeamDto::getMemberId);
+    }
+
+    private <T> Map<Long, T> findAllByIds(Collection<Long> ids,
+                                          Function<List<Long>, List<T>> fetcher,
+                                          Function<T, Long> idGetter) {
+        //중복과 null은 빼고 입력 순서는 유지한다.
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) {
+            return new LinkedHashMap<>();
+        }
+
+        Map<Long, T> found = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += MAX_IN_CLAUSE_SIZE) {
+            List<Long> chunk = distinctIds.subList(from, Math.min(from + MAX_IN_CLAUSE_SIZE, distinctIds.size()));
+            for (T row : fetcher.apply(padToPowerOfTwo(chunk))) {
+                found.put(idGetter.apply(row), row);
+            }
+        }
+
+        Map<Long, T> result = new LinkedHashMap<>();
+        for (Long id : distinctIds) {
+            T row = found.get(id);
+            if (row != null) {
+                result.put(id, row);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 마지막 id를 반복해서 리스트 크기를 2의 거듭제곱으로 맞춘다.
+     * in (1, 2, 3) -> in (1, 2, 3, 3) 이렇게 해도 결과는 같다.
+     */
+    static List<Long> padToPowerOfTwo(List<Long> ids) {
+        int size = ids.size();
+        int padded = Integer.highestOneBit(size);
+        if (padded < size) {
+            padded <<= 1;
+        }
+        List<Long> result = new ArrayList<>(padded);
+        result.addAll(ids);
+        Long last = ids.get(size - 1);
+        while (result.size() < padded) {
+            result.add(last);
+        }
+        return result;
+    }
+
+    //Builder 사용
+    //회원명, 팀명, 나이(ageGoe, ageLoe)
+    //join으로 팀 이름을 거르는 원래 방식이다. TeamNameCache를 쓰는 search와 비교하려고 그대로 둔다.
+    public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
+        BooleanBuilder builder = new BooleanBuilder();
+        if (hasText(condition.getUsername())) {
+            builder.and(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()));
+        }
+        if (hasText(condition.getTeamName())) {
+            builder.and(team.name.eq(condition.getTeamName()));
+        }
+        if (condition.getAgeGoe() != null) {
+            builder.and(member.age.goe(condition.getAgeGoe()));
+        }
+        if (condition.getAgeLoe() != null) {
+            builder.and(member.age.loe(condition.getAgeLoe()));
+        }
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(builder)
+                .fetch();
+    }
+
+    /**
+     * where 절에 파라미터 사용. team join 없이 검색한다. teamName은 TeamNameCache로 team id를 먼저 찾아서
+     * member.team_id 인덱스로 거르고, 결과의 팀 이름도 캐시에서 채운다. 그런 이름의 팀이 없으면 쿼리를 보내지 않는다.
+     * 트랜잭션 안에서 캐시에 없는 이름은 아직 flush 안 된 팀일 수 있어서 join으로 거른다. (teamFilter 참고)
+     * join으로 하는 방식은 searchByBuilder 참고.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return search(condition, null);
+    }
+
+    /**
+     * limit이 있으면 id 순으로 그만큼만 읽는다.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Long limit) {
+        if (shards != null) {
+            return shards.search(condition, limit);
+        }
+        return searchRows(condition, teamFilter(condition.getTeamName()), 0, limit);
+    }
+
+    /**
+     * condition의 teamName 대신 teamIds로 거른다. teamIds가 null이면 팀으로는 거르지 않는다.
+     * 여러 팀 이름을 한 번에 검색할 때(MemberBatchSearch) 쓴다.
+     */
+    public List<MemberTeamDto> searchInTeams(MemberSearchCondition condition, Collection<Long> teamIds, Long limit) {
+        return searchRows(condition, teamIds == null ? TeamFilter.NONE : TeamFilter.of(teamIds), 0, limit);
+    }
+
+    //limit이 있으면 id 순으로 offset부터 limit개
+    private List<MemberTeamDto> searchRows(MemberSearchCondition condition, TeamFilter teamFilter, long offset, Long limit) {
+        if (teamFilter.matchesNothing()) {
+            return new ArrayList<>();
+        }
+        JPAQuery<Tuple> query = queryFactory
+                .select(member.id,
+                        member.username,
+                        member.age,
+                        member.team.id)
+                .from(member);
+        if (teamFilter.join) {
+            query.leftJoin(member.team, team);
+        }
+        query.where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                teamFilter.predicate(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()));
+        if (limit != null) {
+            query.orderBy(member.id.asc()).offset(offset).limit(limit);
+        }
+        List<Tuple> rows = query.fetch();
+
+        List<MemberTeamDto> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Long teamId = row.get(member.team.id);
+            Integer age = row.get(member.age);
+            result.add(new MemberTeamDto(
+                    row.get(member.id),
+                    row.get(member.username),
+                    age == null ? 0 : age,
+                    teamId,
+                    teamNameCache.nameOf(teamId)));
+        }
+        return result;
+    }
+
+    /**
+     * teamName 조건을 TeamNameCache로 team id 조건으로 바꾼다.
+     * 트랜잭션 안에서 방금 persist한 팀은 flush 때 @PostPersist가 불려야 캐시에 들어간다.
+     * 그래서 트랜잭션 안에서 못 찾은 이름은 "없는 팀"으로 치지 않고 team join으로 거른다. join 쿼리는 auto flush가 되니까 자기 변경이 보인다.
+     * 트랜잭션 밖에는 flush 안 된 팀이 있을 수 없으니 바로 빈 결과다.
+     */
+    private TeamFilter teamFilter(String teamName) {
+        if (!hasText(teamName)) {
+            return TeamFilter.NONE;
+        }
+        List<Long> teamIds = teamNameCache.idsOf(teamName);
+        if (teamIds.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()) {
+            return TeamFilter.JOIN;
+        }
+        return TeamFilter.of(teamIds);
+    }
+
+    /**
+     * searchInTeams와 같은 조건에서 id가 afterId보다 큰 회원이 있는 팀 id.
+     * MemberBatchSearch가 합친 검색이 잘렸을 때 어느 팀 결과가 잘렸는지 볼 때 쓴다.
+     */
+    public Set<Long> teamIdsAfter(MemberSearchCondition condition, Collection<Long> teamIds, Long afterId) {
+        return new HashSet<>(queryFactory
+                .select(member.team.id)
+                .distinct()
+                .from(member)
+                .where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                        member.team.id.in(teamIds),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()),
+                        member.id.gt(afterId))
+                .fetch());
+    }
+
+    /**
+     * search와 같은 조건인데 fields에 있는 컬럼만 select 한다. 응답도 그 필드만 담은 Map이다.
+     * teamName으로 거르는 건 search처럼 team id로 바꿔서 하고, teamName 필드를 고를 때만 team join을 한다.
+     */
+    public List<Map<String, Object>> searchFields(MemberSearchCondition condition, Set<MemberField> fields) {
+        TeamFilter teamFilter = teamFilter(condition.getTeamName());
+        if (teamFilter.matchesNothing()) {
+            return new ArrayList<>();
+        }
+        Expression<?>[] select = fields.stream().map(MemberField::expression).toArray(Expression[]::new);
+        boolean joinTeam = teamFilter.join || fields.stream().anyMatch(MemberField::needsTeamJoin);
+
+        JPAQuery<Tuple> query = queryFactory
+                .select(select)
+                .from(member);
+        if (joinTeam) {
+            query.leftJoin(member.team, team);
+        }
+        List<Tuple> tuples = query
+                .where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                        teamFilter.predicate(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()))
+                .fetch();
+
+        List<Map<String, Object>> result = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            int i = 0;
+            for (MemberField field : fields) {
+                row.put(field.fieldName(), tuple.get(i++, Object.class));
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    /**
+     * 페이징 검색. search처럼 team join 없이 id 순으로 자른다. totalCount는 countSupplier로 구한다.
+     * 첫 페이지에서 결과가 size보다 적거나 마지막 페이지면 PageableExecutionUtils가 count 쿼리를 생략한다.
+     */
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable, LongSupplier countSupplier) {
+        if (shards != null) {
+            return PageableExecutionUtils.getPage(shards.searchContent(condition, pageable), pageable, countSupplier);
+        }
+        List<MemberTeamDto> content = searchRows(condition, teamFilter(condition.getTeamName()),
+                pageable.getOffset(), (long) pageable.getPageSize());
+        return PageableExecutionUtils.getPage(content, pageable, countSupplier);
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        return searchPage(condition, pageable, () -> count(condition));
+    }
+
+    /**
+     * 팀까지 fetch join한 Member 엔티티 페이지. 나이 많은 순, 같으면 id 순.
+     * fetch join 쿼리에 바로 offset/limit을 걸지 않고 TwoPhasePaging으로 id부터 자른다.
+     */
+    public Page<Member> searchPageWithTeam(MemberSearchCondition condition, Pageable pageable) {
+        TeamFilter teamFilter = teamFilter(condition.getTeamName());
+        if (teamFilter.matchesNothing()) {
+            return new PageImpl<>(new ArrayList<>(), pageable, 0);
+        }
+        JPAQuery<Long> idQuery = queryFactory
+                .select(member.id)
+                .from(member);
+        if (teamFilter.join) {
+            idQuery.leftJoin(member.team, team);
+        }
+        idQuery.where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                teamFilter.predicate(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()))
+                .orderBy(member.age.desc(), member.id.asc());
+        return TwoPhasePaging.fetchPage(idQuery, pageable,
+                ids -> queryFactory
+                        .selectFrom(member)
+                        .leftJoin(member.team, team).fetchJoin()
+                        .where(member.id.in(ids))
+                        .fetch(),
+                Member::getId,
+                () -> count(condition));
+    }
+
+    /**
+     * search와 같은 조건의 정확한 count.
+     * teamName은 search처럼 team id로 바꿔서 거르니까 보통은 join이 없다.
+     */
+    public long count(MemberSearchCondition condition) {
+        if (shards != null) {
+            return shards.count(condition);
+        }
+        TeamFilter teamFilter = teamFilter(condition.getTeamName());
+        if (teamFilter.matchesNothing()) {
+            return 0;
+        }
+        JPAQuery<Long> query = queryFactory
+                .select(member.count())
+                .from(member);
+        if (teamFilter.join) {
+            query.leftJoin(member.team, team);
+        }
+        Long count = query
+                .where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                        teamFilter.predicate(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()))
+                .fetchOne();
+        return count == null ? 0 : count;
+    }
+
+    //ShardedMemberRepository, MemberExportJob도 같은 조건을 쓰도록 static으로 열어둔다.
+    public static BooleanExpression usernameEq(String username, boolean ignoreCase) {
+        if (!hasText(username)) {
+            return null;
+        }
+        //lower(username) = ? 는 인덱스를 못 타니까 미리 정규화해둔 컬럼과 비교한다.
+        return ignoreCase
+                ? member.normalizedUsername.eq(UsernameNormalizer.normalize(username))
+                : member.username.eq(username);
+    }
+
+    public static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    public static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    public static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+
+    /**
+     * teamName 조건을 어떻게 걸지. ids가 null이면 팀으로 거르지 않고, join이면 team.name으로 거른다.
+     */
+    private static final class TeamFilter {
+        static final TeamFilter NONE = new TeamFilter(null, false);
+        static final TeamFilter JOIN = new TeamFilter(null, true);
+
+        private final Collection<Long> ids;
+        private final boolean join;
+
+        private TeamFilter(Collection<Long> ids, boolean join) {
+            this.ids = ids;
+            this.join = join;
+        }
+
+        static TeamFilter of(Collection<Long> ids) {
+            return new TeamFilter(ids, false);
+        }
+
+        //없는 팀 이름이면 쿼리를 보낼 필요가 없다.
+        boolean matchesNothing() {
+            return ids != null && ids.isEmpty();
+        }
+
+        BooleanExpression predicate(String teamName) {
+            if (join) {
+                return teamNameEq(teamName);
+            }
+            return ids == null ? null : member.team.id.in(ids);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChangeListener;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 나이 많은 순 top-N 회원 (age desc, username asc). 전체 하나, 팀마다 하나씩 메모리에 들고 있는다.
+ * 요청마다 회원 테이블 전체를 정렬하지 않고 들고 있는 N명을 그대로 돌려준다.
+ *
+ * - 각 순위표는 N의 두 배까지만 들고 있는다. 그 밖의 회원은 순위표 마지막보다 뒤에 있다는 것만 보장한다.
+ * - 회원 저장/수정/삭제(MemberChangeListener)는 트랜잭션별로 모아 두었다가(TxChanges) 커밋된 뒤에 넣고 뺀다.
+ *   그래서 커밋 전이나 롤백된 변경은 다른 요청에 보이지 않는다. 건드리는 순위표는 전체, 새 팀, 예전 팀뿐이다.
+ *   빼다가 N명보다 적어지면 그 아래가 누군지 모르니까 다음 조회 때 DB에서 다시 읽는다.
+ * - 회원을 바꾸고 아직 안 끝난 트랜잭션 안에서 조회하면 공유 순위표 대신 DB에서 바로 읽는다. (자기 변경이 보인다)
+ *   그렇게 읽은 결과는 커밋 전 DB라서 순위표에 넣지 않는다. flush 전 변경은 엔티티 콜백이 아직 안 와서 모른다.
+ * - 팀 순위표는 TeamNameCache에 있는 팀만 만들고, max-teams를 넘으면 가장 오래 안 쓴 것부터 버린다.
+ * - bulk 연산(bulkChanged), 롤백, 스프링 트랜잭션 밖에서 온 변경이면 통째로 다시 읽는다.
+ * - 바뀐 회원 id만 알려주는 변경(membersChanged, 나이 write-behind flush)은 그 회원들만 다시 읽어서 넣는다.
+ * - 변경을 넣기 전에 completions를 올려서, 그 전 DB로 다시 읽고 있던 순위표는 넣지 못하게 한다.
+ */
+@Slf4j
+@Component
+public class MemberLeaderboard implements MemberChangeListener.Subscriber {
+
+    //QuerydslBasicTest.sort와 같은 순서(username이 null이면 뒤로). 같으면 id 순
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt((Entry e) -> e.age).reversed()
+            .thenComparing(e -> e.username, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(e -> e.id);
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    private final JPAQueryFactory queryFactory;
+    private final TeamNameCache teamNameCache;
+    private final TransactionTemplate readOnlyTx;
+    private final int size;
+    private final int maxTeams;
+    private final Board global;
+    private final Map<Long, Board> teams = new ConcurrentHashMap<>();
+    //팀 순위표에 들어 있는 회원 -> 팀. 회원이 팀을 옮기면 예전 팀 순위표만 찾아서 뺀다.
+    private final Map<Long, Long> boardTeamOf = new ConcurrentHashMap<>();
+    //커밋된 변경을 넣기 전마다 올라간다. 다시 읽는 도중에 바뀌면 읽은 결과를 버린다.
+    private final AtomicLong completions = new AtomicLong();
+    //트랜잭션별 변경 기록(TxChanges)을 트랜잭션 리소스로 걸어둘 때 쓰는 key
+    private final Object txKey = new Object();
+    private final LongAdder rebuilds = new LongAdder();
+
+    public MemberLeaderboard(JPAQueryFactory queryFactory, TeamNameCache teamNameCache,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${member.leaderboard.size:10}") int size,
+                             @Value("${member.leaderboard.max-teams:1000}") int maxTeams) {
+        this.queryFactory = queryFactory;
+        this.teamNameCache = teamNameCache;
+        //membersChanged는 부른 쪽 트랜잭션의 커밋 전 변경이 섞이지 않게 따로 읽는다.
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTx.setReadOnly(true);
+        this.size = size;
+        this.maxTeams = maxTeams;
+        this.global = new Board(null, size * 2);
+        MemberChangeListener.subscribe(this);
+    }
+
+    @PreDestroy
+    public void close() {
+        MemberChangeListener.unsubscribe(this);
+    }
+
+    /**
+     * 나이 많은 순 N명. teamId가 null이면 전체, 없는 팀이면 빈 리스트
+     */
+    public List<MemberTeamDto> top(Long teamId) {
+        Board board = teamId == null ? global : teamBoard(teamId);
+        if (board == null) {
+            return new ArrayList<>();
+        }
+        List<Entry> entries = null;
+        if (TransactionSynchronizationManager.hasResource(txKey)) {
+            //이 트랜잭션에 아직 커밋 안 된 변경이 있다.
+            entries = load(teamId, size);
+        }
+        for (int attempt = 0; attempt < MAX_REBUILD_ATTEMPTS && entries == null; attempt++) {
+            entries = board.top(size);
+            if (entries == null) {
+                long modCount = board.modCount();
+                long completed = completions.get();
+                List<Entry> rows = load(teamId, board.capacity);
+                entries = rows.subList(0, Math.min(size, rows.size()));
+                //읽다가 auto flush로 이 트랜잭션의 변경이 생겼으면 커밋 전 DB로 읽은 것이니 넣지 않는다.
+                if (TransactionSynchronizationManager.hasResource(txKey)) {
+                    break;
+                }
+                rebuilds.increment();
+                if (!board.install(rows, modCount, completed)) {
+                    entries = null;
+                }
+            }
+        }
+        if (entries == null) {
+            //변경이 계속 들어와서 순위표를 못 만들었으면 이번만 DB 결과를 그대로 쓴다.
+            entries = load(teamId, size);
+        }
+
+        List<MemberTeamDto> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(new MemberTeamDto(entry.id, entry.username, entry.age, entry.teamId, teamNameCache.nameOf(entry.teamId)));
+        }
+        return result;
+    }
+
+    public long rebuildCount() {
+        return rebuilds.sum();
+    }
+
+    public int teamBoardCount() {
+        return teams.size();
+    }
+
+    private Board teamBoard(Long teamId) {
+        Board board = teams.get(teamId);
+        if (board == null) {
+            //아무 teamId로나 순위표가 생기지 않게 있는 팀인지 먼저 본다.
+            if (teamNameCache.nameOf(teamId) == null) {
+                return null;
+            }
+            board = teams.computeIfAbsent(teamId, id -> new Board(id, size * 2));
+            evictIfFull();
+        }
+        board.lastUsedNanos = System.nanoTime();
+        return board;
+    }
+
+    private void evictIfFull() {
+        while (teams.size() > maxTeams) {
+            Board oldest = null;
+            for (Board board : teams.values()) {
+                if (oldest == null || board.lastUsedNanos - oldest.lastUsedNanos < 0) {
+                    oldest = board;
+                }
+            }
+            if (oldest != null && teams.remove(oldest.teamId, oldest)) {
+                oldest.evict();
+            }
+        }
+    }
+
+    @Override
+    public void saved(Member saved) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateAll();
+            return;
+        }
+        Entry entry = Entry.of(saved);
+        changes().changes.put(entry.id, entry);
+    }
+
+    @Override
+    public void removed(Member removed) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateAll();
+            return;
+        }
+        //null이면 지운 것
+        changes().changes.put(removed.getId(), null);
+    }
+
+    /**
+     * 바뀐 회원만 다시 읽어서 넣는다. 없어진 회원은 뺀다.
+     * 다시 읽는 데 실패하면 어디가 틀렸는지 모르니 전부 버린다.
+     */
+    @Override
+    public void membersChanged(Collection<Long> memberIds) {
+        //이미 커밋된 변경이다. 그 전 DB로 다시 읽는 중인 순위표는 넣지 못하게 한다.
+        completions.incrementAndGet();
+        try {
+            Map<Long, Entry> current = readOnlyTx.execute(status -> loadByIds(memberIds));
+            for (Long id : memberIds) {
+                Entry entry = current.get(id);
+                if (entry == null) {
+                    applyRemove(id);
+                } else {
+                    applySave(entry);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("바뀐 회원 {}명을 다시 읽지 못해서 순위표를 전부 다시 만듭니다.", memberIds.size(), e);
+            invalidateAll();
+        }
+    }
+
+    //전체, 새 팀, (팀을 옮겼으면) 예전 팀 순위표에 반영한다.
+    private void applySave(Entry entry) {
+        global.save(entry);
+        Long previousTeam = boardTeamOf.get(entry.id);
+        if (entry.teamId != null) {
+            Board board = teams.get(entry.teamId);
+            if (board != null) {
+                board.save(entry);
+            }
+        }
+        if (previousTeam != null && !previousTeam.equals(entry.teamId)) {
+            //다른 팀으로 옮긴 경우
+            Board board = teams.get(previousTeam);
+            if (board != null) {
+                board.remove(entry.id);
+            }
+        }
+    }
+
+    private void applyRemove(Long id) {
+        global.remove(id);
+        Long team = boardTeamOf.get(id);
+        if (team != null) {
+            Board board = teams.get(team);
+            if (board != null) {
+                board.remove(id);
+            }
+        }
+    }
+
+    /**
+     * 트랜잭션 안이면 커밋/롤백 뒤에도 한 번 더 비운다. 그 사이에 다른 스레드가 커밋 전 DB로 다시 만들 수 있어서다.
+     */
+    @Override
+    public void bulkChanged() {
+        invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            changes().bulk = true;
+        }
+    }
+
+    //트랜잭션마다 처음 바꿀 때 한 번만 등록한다.
+    private TxChanges changes() {
+        TxChanges changes = (TxChanges) TransactionSynchronizationManager.getResource(txKey);
+        if (changes == null) {
+            changes = new TxChanges();
+            TransactionSynchronizationManager.bindResource(txKey, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+
+    private void invalidateAll() {
+        global.invalidate();
+        teams.values().forEach(Board::invalidate);
+    }
+
+    private List<Entry> load(Long teamId, int limit) {
+        List<Tuple> rows = queryFactory
+                .select(member.id, member.username, member.age, member.team.id)
+                .from(member)
+                .where(teamId == null ? null : member.team.id.eq(teamId))
+                .orderBy(member.age.desc(), member.username.asc().nullsLast(), member.id.asc())
+                .limit(limit)
+                .fetch();
+        List<Entry> entries = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            entries.add(Entry.of(row));
+        }
+        return entries;
+    }
+
+    //in 절 크기는 MemberJpaRepository.findAllByIds와 같은 방식으로 맞춘다.
+    private Map<Long, Entry> loadByIds(Collection<Long> memberIds) {
+        List<Long> ids = new ArrayList<>(memberIds);
+        Map<Long, Entry> entries = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += MemberJpaRepository.MAX_IN_CLAUSE_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + MemberJpaRepository.MAX_IN_CLAUSE_SIZE, ids.size()));
+            List<Tuple> rows = queryFactory
+                    .select(member.id, member.username, member.age, member.team.id)
+                    .from(member)
+                    .where(member.id.in(MemberJpaRepository.padToPowerOfTwo(chunk)))
+                    .fetch();
+            for (Tuple row : rows) {
+                Entry entry = Entry.of(row);
+                entries.put(entry.id, entry);
+            }
+        }
+        return entries;
+    }
+
+    private static class Entry {
+        private final Long id;
+        private final String username;
+        private final int age;
+        private final Long teamId;
+
+        Entry(Long id, String username, int age, Long teamId) {
+            this.id = id;
+            this.username = username;
+            this.age = age;
+            this.teamId = teamId;
+        }
+
+        //team은 지연 로딩 프록시일 수 있는데 getId()는 초기화하지 않는다.
+        static Entry of(Member member) {
+            return new Entry(member.getId(), member.getUsername(), member.getAge(),
+                    member.getTeam() == null ? null : member.getTeam().getId());
+        }
+
+        static Entry of(Tuple row) {
+            Integer age = row.get(member.age);
+            return new Entry(row.get(member.id), row.get(member.username), age == null ? 0 : age, row.get(member.team.id));
+        }
+    }
+
+    /**
+     * 회원을 바꾼 트랜잭션 하나. 회원별 마지막 상태만 모아 두었다가 커밋되면 순위표에 넣는다.
+     * 롤백되면 넣을 것은 없지만, 혹시 커밋 전 DB로 만든 순위표가 있을 수 있으니 전부 버린다.
+     * REQUIRES_NEW로 잠깐 멈춘 동안에는 리소스를 풀어서 안쪽 트랜잭션이 따로 모으게 한다.
+     */
+    private class TxChanges implements TransactionSynchronization {
+        //회원 id -> 마지막 상태 (null이면 삭제). 같은 회원을 여러 번 바꿔도 마지막 것만 넣는다.
+        private final Map<Long, Entry> changes = new LinkedHashMap<>();
+        private boolean bulk;
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(txKey);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(txKey, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(txKey);
+            //먼저 올려야 커밋 전 DB로 읽고 있던 순위표가 걸러진다. 그 전에 들어간 순위표는 아래에서 고친다.
+            completions.incrementAndGet();
+            if (status != STATUS_COMMITTED || bulk) {
+                invalidateAll();
+                return;
+            }
+            changes.forEach((id, entry) -> {
+                if (entry == null) {
+                    applyRemove(id);
+                } else {
+                    applySave(entry);
+                }
+            });
+        }
+    }
+
+    /**
+     * 정렬된 앞쪽 capacity명. complete면 해당 범위의 회원이 전부 들어 있는 것이다.
+     * dirty면 다시 읽기 전까지 쓰지 않는다. modCount는 다시 읽는 사이에 변경이 끼어들었는지 보는 용도다.
+     * 팀 순위표(teamId가 있으면)는 들고 있는 회원을 boardTeamOf에도 적어 둔다.
+     */
+    private class Board {
+        private final Long teamId;
+        private final int capacity;
+        private final TreeSet<Entry> sorted = new TreeSet<>(ORDER);
+        private final Map<Long, Entry> byId = new HashMap<>();
+        private boolean complete;
+        private boolean dirty = true;
+        private long modCount;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        Board(Long teamId, int capacity) {
+            this.teamId = teamId;
+            this.capacity = capacity;
+        }
+
+        synchronized List<Entry> top(int n) {
+            if (dirty) {
+                return null;
+            }
+            List<Entry> top = new ArrayList<>(Math.min(n, sorted.size()));
+            for (Entry entry : sorted) {
+                if (top.size() == n) {
+                    break;
+                }
+                top.add(entry);
+            }
+            return top;
+        }
+
+        synchronized long modCount() {
+            return modCount;
+        }
+
+        synchronized boolean install(List<Entry> rows, long expectedModCount, long expectedCompletions) {
+            //커밋된 변경은 completions를 올린 뒤에 넣는다. 여기서 안 바뀌었으면 그 변경은 이 순위표가 들어간 뒤에 넣어진다.
+            if (modCount != expectedModCount || completions.get() != expectedCompletions) {
+                return false;
+            }
+            new ArrayList<>(byId.keySet()).forEach(this::unindex);
+            sorted.clear();
+            rows.forEach(this::add);
+            complete = rows.size() < capacity;
+            dirty = false;
+            return true;
+        }
+
+        synchronized void invalidate() {
+            dirty = true;
+            modCount++;
+        }
+
+        synchronized void evict() {
+            invalidate();
+            new ArrayList<>(byId.keySet()).forEach(this::unindex);
+            sorted.clear();
+        }
+
+        synchronized void save(Entry entry) {
+            modCount++;
+            if (dirty) {
+                return;
+            }
+            Entry old = unindex(entry.id);
+            if (old != null) {
+                sorted.remove(old);
+            }
+            if (!sorted.isEmpty() && ORDER.compare(entry, sorted.last()) < 0) {
+                add(entry);
+                if (sorted.size() > capacity) {
+                    unindex(sorted.pollLast().id);
+                    complete = false;
+                }
+            } else if (complete && sorted.size() < capacity) {
+                add(entry);
+            } else {
+                complete = false;
+            }
+            checkSize();
+        }
+
+        synchronized void remove(Long id) {
+            modCount++;
+            if (dirty) {
+                return;
+            }
+            Entry old = unindex(id);
+            if (old != null) {
+                sorted.remove(old);
+                checkSize();
+            }
+        }
+
+        private void add(Entry entry) {
+            sorted.add(entry);
+            byId.put(entry.id, entry);
+            if (teamId != null) {
+                boardTeamOf.put(entry.id, teamId);
+            }
+        }
+
+        private Entry unindex(Long id) {
+            Entry old = byId.remove(id);
+            if (old != null && teamId != null) {
+                boardTeamOf.remove(id, teamId);
+            }
+            return old;
+        }
+
+        //순위표 밖에 회원이 더 있는데 N명보다 적어지면 그 다음 사람을 모른다.
+        private void checkSize() {
+            if (!complete && sorted.size() < capacity / 2) {
+                dirty = true;
+            }
+        }
+    }
+}
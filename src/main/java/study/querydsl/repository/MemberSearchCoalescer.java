@@ -0,0 +1,60 @@
+package study.querydsl.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.support.SingleFlight;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * 트래픽이 몰릴 때 같은 조건의 search가 동시에 여러 개 들어오면 SQL은 한 번만 실행하고 결과를 나눠 준다.
+ *
+ * 쓰기 트랜잭션 안에서는 아직 커밋 안 된 데이터가 다른 요청에 새어 나갈 수 있으니 합치지 않는다.
+ * 결과 리스트는 여러 요청이 같이 쓰기 때문에 수정할 수 없는 리스트로 돌려준다.
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberSearchCoalescer {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final SingleFlight<MemberSearchCondition, List<MemberTeamDto>> singleFlight = new SingleFlight<>();
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return memberJpaRepository.search(condition);
+        }
+        MemberSearchCondition key = normalize(condition);
+        return singleFlight.execute(key, () -> Collections.unmodifiableList(memberJpaRepository.search(key)));
+    }
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("executed", singleFlight.executedCount());
+        metrics.put("coalesced", singleFlight.coalescedCount());
+        metrics.put("inFlight", (long) singleFlight.inFlightCount());
+        return metrics;
+    }
+
+    /**
+     * "teamA " 와 "teamA", "" 와 null 은 같은 검색이므로 같은 key가 되게 맞춘다.
+     * MemberSearchCondition은 @Data라서 equals/hashCode가 필드 기준이다.
+     */
+    static MemberSearchCondition normalize(MemberSearchCondition condition) {
+        MemberSearchCondition key = new MemberSearchCondition();
+        key.setUsername(hasText(condition.getUsername()) ? condition.getUsername().trim() : null);
+        key.setUsernameIgnoreCase(condition.isUsernameIgnoreCase());
+        key.setTeamName(hasText(condition.getTeamName()) ? condition.getTeamName().trim() : null);
+        key.setAgeGoe(condition.getAgeGoe());
+        key.setAgeLoe(condition.getAgeLoe());
+        return key;
+    }
+}
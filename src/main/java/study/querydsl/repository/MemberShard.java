@@ -0,0 +1,147 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.ChangeNotifications;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberJpaRepository.ageGoe;
+import static study.querydsl.repository.MemberJpaRepository.ageLoe;
+import static study.querydsl.repository.MemberJpaRepository.teamNameEq;
+import static study.querydsl.repository.MemberJpaRepository.usernameEq;
+
+/**
+ * 샤드 하나. DataSource, EntityManagerFactory, 트랜잭션 매니저를 따로 가진다.
+ * 메인 EntityManagerFactory 빈과 부딪히지 않도록 스프링 빈으로 등록하지 않고 직접 만든다.
+ */
+class MemberShard {
+
+    private final int index;
+    private final HikariDataSource dataSource;
+    private final EntityManagerFactory emf;
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate readOnlyTx;
+
+    private MemberShard(int index, HikariDataSource dataSource, EntityManagerFactory emf) {
+        this.index = index;
+        this.dataSource = dataSource;
+        this.emf = emf;
+        //트랜잭션에 묶인 EntityManager를 돌려주는 프록시. 메인 쪽 @PersistenceContext와 같은 방식이다.
+        this.em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+        this.queryFactory = new JPAQueryFactory(em);
+        JpaTransactionManager transactionManager = new JpaTransactionManager(emf);
+        this.tx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    static MemberShard create(int index, int shardCount, String url) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName("org.h2.Driver")
+                .url(url)
+                .username("sa")
+                .password("")
+                .build();
+        dataSource.setPoolName("member-shard-" + index);
+
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setPersistenceUnitName("member-shard-" + index);
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan(Member.class.getPackageName());
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        //스프링 부트 기본 설정과 같은 컬럼 이름을 쓴다.
+        properties.put("hibernate.physical_naming_strategy",
+                "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy");
+        properties.put("hibernate.implicit_naming_strategy",
+                "org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy");
+        factoryBean.setJpaPropertyMap(properties);
+        factoryBean.afterPropertiesSet();
+
+        /**
+         * id가 샤드끼리 겹치지 않도록 시퀀스를 샤드 수만큼 건너뛰게 한다.
+         * 샤드 3개면 0번: 1, 4, 7 ... / 1번: 2, 5, 8 ... / 2번: 3, 6, 9 ...
+         * 그래서 team_id만 보고도 어느 샤드인지 알 수 있다. (ShardedMemberRepository.shardIndexOfTeamId)
+         */
+        new JdbcTemplate(dataSource).execute("alter sequence hibernate_sequence restart with "
+                + (index + 1) + " increment by " + shardCount);
+
+        return new MemberShard(index, dataSource, factoryBean.getObject());
+    }
+
+    int index() {
+        return index;
+    }
+
+    //메인 DB 기준인 Team/Member 리스너 구독자에게는 알리지 않는다.
+    <T> T write(Function<EntityManager, T> work) {
+        return ChangeNotifications.muted(() -> tx.execute(status -> work.apply(em)));
+    }
+
+    /**
+     * memberId 오름차순으로 정렬해서 가져온다. 여러 샤드 결과를 합칠 때 이 순서로 병합한다.
+     */
+    List<MemberTeamDto> search(MemberSearchCondition condition, long limit) {
+        return readOnlyTx.execute(status -> {
+            JPAQuery<MemberTeamDto> query = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id,
+                            member.username,
+                            member.age,
+                            team.id,
+                            team.name))
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                            teamNameEq(condition.getTeamName()),
+                            ageGoe(condition.getAgeGoe()),
+                            ageLoe(condition.getAgeLoe()))
+                    .orderBy(member.id.asc());
+            if (limit > 0) {
+                query.limit(limit);
+            }
+            return query.fetch();
+        });
+    }
+
+    long count(MemberSearchCondition condition) {
+        return readOnlyTx.execute(status -> queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername(), condition.isUsernameIgnoreCase()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe()))
+                .fetchOne());
+    }
+
+    void close() {
+        emf.close();
+        dataSource.close();
+    }
+}
@@ -0,0 +1,194 @@
+package study.querydsl.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+
+/**
+ * team 단위로 Member를 여러 DB(샤드)에 나눠 담는다.
+ * - 팀은 이름의 해시로 샤드를 고르고, 그 팀의 회원은 모두 같은 샤드에 들어간다.
+ * - 검색은 teamName 조건이 있으면 그 팀의 샤드 하나만, 없으면 모든 샤드에 동시에 던지고(scatter)
+ *   memberId 순으로 병합한다(gather).
+ *
+ * member.sharding.enabled=true 일 때만 뜨고, 그때 MemberJpaRepository가 save, search, searchPage, count를 여기로 넘긴다.
+ * 변경 이력(Tombstone), bulk 연산, 집계 같은 나머지 기능은 샤드를 넘나드는 의미를 따로 정해야 해서 아직 메인 DB에서만 돈다.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "member.sharding.enabled", havingValue = "true")
+public class ShardedMemberRepository {
+
+    private static final Comparator<MemberTeamDto> BY_MEMBER_ID = Comparator.comparing(MemberTeamDto::getMemberId);
+
+    private final List<MemberShard> shards = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public ShardedMemberRepository(@Value("${member.sharding.shard-count:2}") int shardCount,
+                                   @Value("${member.sharding.url:jdbc:h2:mem:member-shard-%d;DB_CLOSE_DELAY=-1}") String urlPattern) {
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(MemberShard.create(i, shardCount, String.format(urlPattern, i)));
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "member-shard-search-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("member 샤드 {}개 준비 완료", shardCount);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+        shards.forEach(MemberShard::close);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    int shardIndexOfTeamName(String teamName) {
+        return Math.floorMod(teamName.hashCode(), shards.size());
+    }
+
+    //MemberShard에서 시퀀스를 샤드 수만큼 건너뛰게 해뒀기 때문에 id로 샤드를 알 수 있다.
+    int shardIndexOfTeamId(Long teamId) {
+        return (int) Math.floorMod(teamId - 1, (long) shards.size());
+    }
+
+    public void saveTeam(Team team) {
+        shards.get(shardIndexOfTeamName(team.getName())).write(em -> {
+            em.persist(team);
+            return null;
+        });
+    }
+
+    /**
+     * 회원은 팀이 있는 샤드에 저장한다. 팀이 없는 회원은 0번 샤드에 둔다.
+     * 아직 저장 안 된 팀이면 팀부터 저장한다.
+     * 샤드는 자기 트랜잭션으로 바로 커밋하니까 호출한 쪽 트랜잭션이 롤백돼도 남는다.
+     */
+    public void save(Member member) {
+        Team memberTeam = member.getTeam();
+        if (memberTeam != null && memberTeam.getId() == null) {
+            saveTeam(memberTeam);
+        }
+        MemberShard shard = memberTeam == null ? shards.get(0) : shards.get(shardIndexOfTeamId(memberTeam.getId()));
+        shard.write(em -> {
+            if (memberTeam != null) {
+                //다른 영속성 컨텍스트의 팀 객체 대신 이 샤드의 참조로 바꿔서 넣는다.
+                member.setTeam(em.getReference(Team.class, memberTeam.getId()));
+            }
+            em.persist(member);
+            return null;
+        });
+    }
+
+    /**
+     * MemberJpaRepository.search와 같은 조건인데 결과는 memberId 오름차순이다.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return search(condition, null);
+    }
+
+    /**
+     * limit이 있으면 샤드마다 limit개까지만 읽고, 합친 결과도 limit개로 자른다.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Long limit) {
+        long window = limit == null ? 0 : limit;
+        List<List<MemberTeamDto>> results = scatter(condition, shard -> shard.search(condition, window));
+        return mergeSorted(results, limit == null ? Long.MAX_VALUE : limit);
+    }
+
+    /**
+     * total은 샤드별 count의 합이다.
+     */
+    public Page<MemberTeamDto> search(MemberSearchCondition condition, Pageable pageable) {
+        return new PageImpl<>(searchContent(condition, pageable), pageable, count(condition));
+    }
+
+    /**
+     * 각 샤드에서 offset + pageSize 까지만 가져와서 병합한 뒤 offset만큼 버린다.
+     */
+    public List<MemberTeamDto> searchContent(MemberSearchCondition condition, Pageable pageable) {
+        long window = pageable.getOffset() + pageable.getPageSize();
+        List<List<MemberTeamDto>> results = scatter(condition, shard -> shard.search(condition, window));
+        List<MemberTeamDto> merged = mergeSorted(results, window);
+        return merged.size() <= pageable.getOffset()
+                ? new ArrayList<>()
+                : new ArrayList<>(merged.subList((int) pageable.getOffset(), merged.size()));
+    }
+
+    public long count(MemberSearchCondition condition) {
+        return scatter(condition, shard -> shard.count(condition)).stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    private List<MemberShard> targetShards(MemberSearchCondition condition) {
+        if (hasText(condition.getTeamName())) {
+            return Collections.singletonList(shards.get(shardIndexOfTeamName(condition.getTeamName())));
+        }
+        return shards;
+    }
+
+    private <T> List<T> scatter(MemberSearchCondition condition, Function<MemberShard, T> work) {
+        List<MemberShard> targets = targetShards(condition);
+        if (targets.size() == 1) {
+            return Collections.singletonList(work.apply(targets.get(0)));
+        }
+        List<CompletableFuture<T>> futures = targets.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> work.apply(shard), executor))
+                .collect(Collectors.toList());
+        return futures.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 이미 memberId 순으로 정렬된 샤드별 결과를 k-way 병합한다.
+     */
+    static List<MemberTeamDto> mergeSorted(List<List<MemberTeamDto>> sortedLists, long limit) {
+        //{리스트 번호, 위치}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(
+                Comparator.comparing((int[] head) -> sortedLists.get(head[0]).get(head[1]), BY_MEMBER_ID));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<MemberTeamDto> merged = new ArrayList<>();
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int[] head = heads.poll();
+            List<MemberTeamDto> list = sortedLists.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (head[1] + 1 < list.size()) {
+                heads.add(new int[]{head[0], head[1] + 1});
+            }
+        }
+        return merged;
+    }
+}
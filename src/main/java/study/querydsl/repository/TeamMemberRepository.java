@@ -0,0 +1,88 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Repository;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.TwoPhasePaging;
+
+import java.util.List;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * team.members를 로딩하지 않고 팀 회원을 다룬다.
+ * 회원이 아주 많은 팀에서 team.getMembers()를 순회하면 전부 메모리에 올라오니까 목록은 여기서 잘라서 읽는다.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TeamMemberRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    public long countMembers(Long teamId) {
+        Long count = queryFactory
+                .select(member.count())
+                .from(member)
+                .where(member.team.id.eq(teamId))
+                .fetchOne();
+        return count == null ? 0 : count;
+    }
+
+    public boolean isMember(Long teamId, Long memberId) {
+        return queryFactory
+                .selectOne()
+                .from(member)
+                .where(member.id.eq(memberId),
+                        member.team.id.eq(teamId))
+                .fetchFirst() != null;
+    }
+
+    /**
+     * id 순으로 한 페이지씩. 전체 건수는 세지 않고 size + 1 개를 읽어서 다음 페이지가 있는지만 본다.
+     */
+    public Slice<Member> findMembers(Long teamId, Pageable pageable) {
+        List<Member> content = queryFactory
+                .selectFrom(member)
+                .where(member.team.id.eq(teamId))
+                .orderBy(member.id.asc())
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize() + 1L)
+                .fetch();
+        boolean hasNext = content.size() > pageable.getPageSize();
+        if (hasNext) {
+            content = content.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    /**
+     * 팀 페이지(최근 만든 팀부터)와 각 팀의 회원을 한 번에 읽는다.
+     * 컬렉션 fetch join에 limit을 걸면 전체를 메모리에서 자르니까 팀 id만 먼저 페이징한다.
+     * 팀당 회원이 아주 많으면 이 메서드 대신 findMembers로 잘라서 읽어야 한다.
+     */
+    public Page<Team> findTeamsWithMembers(Pageable pageable) {
+        return TwoPhasePaging.fetchPage(
+                queryFactory
+                        .select(team.id)
+                        .from(team)
+                        .orderBy(team.id.desc()),
+                pageable,
+                ids -> queryFactory
+                        .selectFrom(team).distinct()
+                        .leftJoin(team.members, member).fetchJoin()
+                        .where(team.id.in(ids))
+                        .fetch(),
+                Team::getId,
+                () -> {
+                    Long count = queryFactory.select(team.count()).from(team).fetchOne();
+                    return count == null ? 0 : count;
+                });
+    }
+}
@@ -0,0 +1,201 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.TeamChangeListener;
+import study.querydsl.support.SingleFlight;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 팀 이름 <-> id. 팀은 회원에 비해 몇 개 안 되니까 통째로 메모리에 들고 있는다.
+ * teamName 조건을 team join 대신 member.team_id in (...) 으로 바꾸고, 결과의 팀 이름도 여기서 채운다.
+ *
+ * 팀이 바뀌면(TeamChangeListener, JDBC import) invalidate()로 버전을 올려서 다음 조회 때 다시 읽는다.
+ * - 트랜잭션 안에서 바뀐 경우에는 커밋/롤백 때 버전을 올린다. 그 전까지 그 트랜잭션은 자기만 보는 스냅샷을 따로 읽는다.
+ *   그래서 방금 만든 팀을 그 트랜잭션 안에서 찾을 수 있고, 커밋 전 변경이 다른 스레드가 쓰는 스냅샷에 섞이지 않는다.
+ * - 같은 버전을 여러 스레드가 동시에 다시 읽으면 한 번만 읽는다. (SingleFlight)
+ * - nameOf에서 모르는 id가 나오면 버전을 올리지 않고 다시 읽어본다. 없는 id로 계속 불러도 MISS_RELOAD_INTERVAL에 한 번만 읽는다.
+ */
+@Component
+public class TeamNameCache {
+
+    private static final long MISS_RELOAD_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final JPAQueryFactory queryFactory;
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder loads = new LongAdder();
+    private final SingleFlight<Long, Snapshot> reloads = new SingleFlight<>();
+    private final Runnable invalidator = this::invalidate;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    //트랜잭션별 스냅샷(TxSnapshot)을 트랜잭션 리소스로 걸어둘 때 쓰는 key
+    private final Object txKey = new Object();
+
+    public TeamNameCache(JPAQueryFactory queryFactory) {
+        this.queryFactory = queryFactory;
+        TeamChangeListener.subscribe(invalidator);
+    }
+
+    @PreDestroy
+    public void close() {
+        TeamChangeListener.unsubscribe(invalidator);
+    }
+
+    /**
+     * 팀 이름은 unique가 아니라서 id가 여러 개일 수 있다. 없으면 빈 리스트.
+     */
+    public List<Long> idsOf(String name) {
+        return snapshot().idsByName.getOrDefault(name, Collections.emptyList());
+    }
+
+    public String nameOf(Long teamId) {
+        if (teamId == null) {
+            return null;
+        }
+        Snapshot current = snapshot();
+        String name = current.namesById.get(teamId);
+        if (name == null) {
+            //알림 없이 생긴 팀일 수 있으니 다시 읽어본다.
+            name = reloadAfterMiss(current).namesById.get(teamId);
+        }
+        return name;
+    }
+
+    /**
+     * 트랜잭션 밖이면 바로 버전을 올린다. 트랜잭션 안이면 그 트랜잭션의 스냅샷만 버리고 버전은 커밋/롤백 때 올린다.
+     * 커밋 전에는 다른 스레드가 그 변경을 못 보니까 공유 스냅샷을 버릴 이유가 없다.
+     */
+    public void invalidate() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            version.incrementAndGet();
+            return;
+        }
+        TxSnapshot local = (TxSnapshot) TransactionSynchronizationManager.getResource(txKey);
+        if (local == null) {
+            local = new TxSnapshot();
+            TransactionSynchronizationManager.bindResource(txKey, local);
+            TransactionSynchronizationManager.registerSynchronization(local);
+        }
+        local.current = null;
+    }
+
+    public long loadCount() {
+        return loads.sum();
+    }
+
+    private Snapshot snapshot() {
+        TxSnapshot local = (TxSnapshot) TransactionSynchronizationManager.getResource(txKey);
+        if (local != null) {
+            return local.get();
+        }
+        Snapshot current = snapshot.get();
+        long currentVersion = version.get();
+        if (current != null && current.version == currentVersion) {
+            return current;
+        }
+        return reload(currentVersion);
+    }
+
+    //읽는 도중에 invalidate 되면 버전이 안 맞아서 다음 조회 때 다시 읽는다.
+    private Snapshot reload(long loadVersion) {
+        return reloads.execute(loadVersion, () -> {
+            Snapshot loaded = load(loadVersion);
+            //늦게 끝난 옛 버전이 새 스냅샷을 덮지 않게 한다.
+            snapshot.accumulateAndGet(loaded, (old, mine) -> old != null && old.isNewerThan(mine) ? old : mine);
+            return loaded;
+        });
+    }
+
+    private Snapshot reloadAfterMiss(Snapshot missed) {
+        if (System.nanoTime() - missed.loadedAtNanos < MISS_RELOAD_INTERVAL_NANOS) {
+            return missed;
+        }
+        TxSnapshot local = (TxSnapshot) TransactionSynchronizationManager.getResource(txKey);
+        if (local != null) {
+            local.current = null;
+            return local.get();
+        }
+        return reload(missed.version);
+    }
+
+    private Snapshot load(long loadedVersion) {
+        loads.increment();
+        List<Tuple> rows = queryFactory
+                .select(team.id, team.name)
+                .from(team)
+                .fetch();
+        Map<String, List<Long>> idsByName = new HashMap<>();
+        Map<Long, String> namesById = new HashMap<>();
+        for (Tuple row : rows) {
+            Long id = row.get(team.id);
+            String name = row.get(team.name);
+            namesById.put(id, name);
+            idsByName.computeIfAbsent(name, key -> new ArrayList<>(1)).add(id);
+        }
+        return new Snapshot(loadedVersion, idsByName, namesById);
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final long loadedAtNanos = System.nanoTime();
+        private final Map<String, List<Long>> idsByName;
+        private final Map<Long, String> namesById;
+
+        Snapshot(long version, Map<String, List<Long>> idsByName, Map<Long, String> namesById) {
+            this.version = version;
+            this.idsByName = idsByName;
+            this.namesById = namesById;
+        }
+
+        boolean isNewerThan(Snapshot other) {
+            return version > other.version || (version == other.version && loadedAtNanos - other.loadedAtNanos > 0);
+        }
+    }
+
+    /**
+     * 팀을 바꾼 트랜잭션이 끝날 때까지 그 트랜잭션만 쓰는 스냅샷. 자기 변경을 보면서 읽는다.
+     * 다른 곳에서 버전이 올라가도(다른 트랜잭션의 커밋) 다시 읽는다.
+     * REQUIRES_NEW로 잠깐 멈춘 동안에는 리소스를 풀어서 안쪽 트랜잭션이 이 스냅샷을 보지 않게 한다.
+     */
+    private class TxSnapshot implements TransactionSynchronization {
+        private Snapshot current;
+
+        Snapshot get() {
+            long currentVersion = version.get();
+            if (current == null || current.version != currentVersion) {
+                current = load(currentVersion);
+            }
+            return current;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(txKey);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(txKey, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(txKey);
+            version.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package study.querydsl.slowquery;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Getter
+@ToString
+public class SlowQuery {
+
+    private final long sequence;
+    private final LocalDateTime capturedAt;
+    private final String sql;
+    //? 자리에 실제 바인딩 값을 넣은 SQL
+    private final String sqlWithValues;
+    private final long durationMillis;
+    private final String error;
+    //이 쿼리를 부른 애플리케이션 코드(보통 repository 메서드)
+    private final String callSite;
+    //"GET /v1/members?teamName=teamA", 요청 스레드가 아니면 null
+    private final String httpRequest;
+    //update는 영향받은 행 수, select는 ResultSet을 닫을 때 읽은 행 수. 모르면 -1
+    private final long rowCount;
+
+    SlowQuery(long sequence, LocalDateTime capturedAt, String sql, String sqlWithValues, long durationMillis,
+              String error, String callSite, String httpRequest, long rowCount) {
+        this.sequence = sequence;
+        this.capturedAt = capturedAt;
+        this.sql = sql;
+        this.sqlWithValues = sqlWithValues;
+        this.durationMillis = durationMillis;
+        this.error = error;
+        this.callSite = callSite;
+        this.httpRequest = httpRequest;
+        this.rowCount = rowCount;
+    }
+}
@@ -0,0 +1,216 @@
+package study.querydsl.slowquery;
+
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.JdbcEventListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * org.hibernate.SQL: debug 처럼 모든 SQL을 찍는 대신, 오래 걸린 SQL만 골라서 링 버퍼에 담는다.
+ * p6spy-spring-boot-starter가 JdbcEventListener 빈을 자동으로 등록해 준다.
+ *
+ * 기준 시간보다 빠른 쿼리는 long 비교 한 번만 하고 끝난다. 스택, HTTP 요청 같은 비싼 정보는
+ * 느린 쿼리에 대해서만 모은다.
+ */
+@Component
+public class SlowQueryListener extends JdbcEventListener {
+
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final SlowQueryRingBuffer buffer;
+
+    //select는 실행 시점에는 행 수를 모르므로 같은 스레드에서 ResultSet을 닫을 때 행 수를 넣어서 버퍼에 넣는다.
+    //버퍼에 넣은 뒤에는 고치지 않는다. 읽는 쪽이 행 수만 안 채워진 항목을 보지 않게 하려는 것이다.
+    private final ThreadLocal<Capture> pending = new ThreadLocal<>();
+
+    public SlowQueryListener(@Value("${slow-query.enabled:true}") boolean enabled,
+                             @Value("${slow-query.threshold-ms:200}") long thresholdMillis,
+                             @Value("${slow-query.sample-rate:1.0}") double sampleRate,
+                             @Value("${slow-query.capacity:256}") int capacity) {
+        this.enabled = enabled;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.sampleRate = sampleRate;
+        this.buffer = new SlowQueryRingBuffer(capacity);
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(PreparedStatementInformation statementInformation, long timeElapsedNanos,
+                                     int rowCount, SQLException e) {
+        if (isSlow(timeElapsedNanos)) {
+            capture(statementInformation, timeElapsedNanos, e).publish(rowCount);
+        }
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(StatementInformation statementInformation, long timeElapsedNanos, String sql,
+                                     int rowCount, SQLException e) {
+        if (isSlow(timeElapsedNanos)) {
+            capture(statementInformation, timeElapsedNanos, e).publish(rowCount);
+        }
+    }
+
+    @Override
+    public void onAfterExecuteBatch(StatementInformation statementInformation, long timeElapsedNanos,
+                                    int[] updateCounts, SQLException e) {
+        if (isSlow(timeElapsedNanos)) {
+            long rowCount = 0;
+            if (updateCounts != null) {
+                for (int count : updateCounts) {
+                    rowCount += Math.max(count, 0);
+                }
+            }
+            capture(statementInformation, timeElapsedNanos, e).publish(rowCount);
+        }
+    }
+
+    /**
+     * JdbcEventListener에는 실행 종류를 가리지 않는 콜백이 없다. (onAfterAnyExecute는 SimpleJdbcEventListener 것)
+     * 그래서 select가 올 수 있는 execute/executeQuery를 Statement, PreparedStatement 별로 다 받는다.
+     */
+    @Override
+    public void onAfterExecuteQuery(PreparedStatementInformation statementInformation, long timeElapsedNanos,
+                                    SQLException e) {
+        afterSelect(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterExecuteQuery(StatementInformation statementInformation, long timeElapsedNanos, String sql,
+                                    SQLException e) {
+        afterSelect(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterExecute(PreparedStatementInformation statementInformation, long timeElapsedNanos,
+                               SQLException e) {
+        afterSelect(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterExecute(StatementInformation statementInformation, long timeElapsedNanos, String sql,
+                               SQLException e) {
+        afterSelect(statementInformation, timeElapsedNanos, e);
+    }
+
+    @Override
+    public void onAfterResultSetClose(ResultSetInformation resultSetInformation, SQLException e) {
+        Capture capture = pending.get();
+        if (capture == null) {
+            return;
+        }
+        boolean sameStatement = capture.statement == resultSetInformation.getStatementInformation();
+        publishPending(sameStatement ? resultSetInformation.getCurrRow() + 1 : -1);
+    }
+
+    public List<SlowQuery> recent(int limit) {
+        return buffer.recent(limit);
+    }
+
+    public long totalCaptured() {
+        return buffer.totalCaptured();
+    }
+
+    private void afterSelect(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        //ResultSet을 안 닫고 다음 쿼리로 넘어간 경우(execute()가 ResultSet 없이 끝난 경우 등)는 행 수 없이 넣는다.
+        publishPending(-1);
+        if (isSlow(timeElapsedNanos)) {
+            Capture capture = capture(statementInformation, timeElapsedNanos, e);
+            if (e != null) {
+                capture.publish(-1);
+            } else {
+                pending.set(capture);
+            }
+        }
+    }
+
+    private boolean isSlow(long timeElapsedNanos) {
+        return enabled && timeElapsedNanos >= thresholdNanos
+                && (sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    //스택, HTTP 요청은 쿼리를 부른 시점에 모아야 하므로 여기서 다 모아 두고, 버퍼에는 publish 때 넣는다.
+    private Capture capture(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        return new Capture(
+                statementInformation,
+                LocalDateTime.now(),
+                statementInformation.getSqlWithValues(),
+                TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos),
+                e != null ? e.getMessage() : null,
+                findCallSite(),
+                currentHttpRequest());
+    }
+
+    private void publishPending(long rowCount) {
+        Capture capture = pending.get();
+        if (capture != null) {
+            pending.remove();
+            capture.publish(rowCount);
+        }
+    }
+
+    /**
+     * 프레임워크와 이 패키지를 건너뛰고 처음 나오는 우리 코드
+     */
+    private static String findCallSite() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(f -> f.getClassName().startsWith("study.querydsl.")
+                        && !f.getClassName().startsWith(SlowQueryListener.class.getPackageName())
+                        && !f.getClassName().startsWith("study.querydsl.query.")
+                        && !f.getClassName().contains("$$"))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse(null));
+    }
+
+    private static String currentHttpRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        String query = request.getQueryString();
+        return request.getMethod() + " " + request.getRequestURI() + (query != null ? "?" + query : "");
+    }
+
+    /**
+     * 버퍼에 넣기 전의 느린 쿼리. 행 수까지 정해지면 SlowQuery를 만들어서 한 번에 넣는다.
+     */
+    private class Capture {
+        private final StatementInformation statement;
+        private final LocalDateTime capturedAt;
+        private final String sqlWithValues;
+        private final long durationMillis;
+        private final String error;
+        private final String callSite;
+        private final String httpRequest;
+
+        Capture(StatementInformation statement, LocalDateTime capturedAt, String sqlWithValues, long durationMillis,
+                String error, String callSite, String httpRequest) {
+            this.statement = statement;
+            this.capturedAt = capturedAt;
+            this.sqlWithValues = sqlWithValues;
+            this.durationMillis = durationMillis;
+            this.error = error;
+            this.callSite = callSite;
+            this.httpRequest = httpRequest;
+        }
+
+        void publish(long rowCount) {
+            //순번은 넣기 직전에 받는다. 먼저 받아 두면 그 칸이 채워질 때까지 recent()가 건너뛴다.
+            buffer.put(new SlowQuery(buffer.nextSequence(), capturedAt, statement.getSql(), sqlWithValues,
+                    durationMillis, error, callSite, httpRequest, rowCount));
+        }
+    }
+}
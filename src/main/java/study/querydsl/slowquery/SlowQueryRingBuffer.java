@@ -0,0 +1,48 @@
+package study.querydsl.slowquery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 크기가 고정된 링 버퍼. 락 없이 순번(sequence)을 하나 받아서 그 칸에 덮어쓴다.
+ * 가득 차면 가장 오래된 것부터 덮인다.
+ */
+class SlowQueryRingBuffer {
+
+    private final AtomicReferenceArray<SlowQuery> slots;
+    private final AtomicLong sequence = new AtomicLong();
+
+    SlowQueryRingBuffer(int capacity) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    long nextSequence() {
+        return sequence.getAndIncrement();
+    }
+
+    void put(SlowQuery query) {
+        slots.set((int) (query.getSequence() % slots.length()), query);
+    }
+
+    /**
+     * 최근 것부터 limit 개
+     */
+    List<SlowQuery> recent(int limit) {
+        long last = sequence.get() - 1;
+        List<SlowQuery> result = new ArrayList<>();
+        for (long seq = last; seq >= 0 && seq > last - slots.length() && result.size() < limit; seq--) {
+            SlowQuery query = slots.get((int) (seq % slots.length()));
+            //아직 쓰는 중이거나 이미 더 새 것으로 덮인 칸은 건너뛴다.
+            if (query != null && query.getSequence() == seq) {
+                result.add(query);
+            }
+        }
+        return result;
+    }
+
+    long totalCaptured() {
+        return sequence.get();
+    }
+}
@@ -0,0 +1,32 @@
+package study.querydsl.startup;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * time-to-first-request를 재기 위해 첫 요청이 들어온 시점만 기록한다. 그 뒤로는 boolean 하나만 본다.
+ */
+@Component
+@RequiredArgsConstructor
+public class FirstRequestFilter extends OncePerRequestFilter {
+
+    private final StartupTimings startupTimings;
+    private volatile boolean seen;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!seen) {
+            seen = true;
+            startupTimings.mark("first-request");
+        }
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,65 @@
+package study.querydsl.startup;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 스프링은 ApplicationReadyEvent 직후에 readiness를 ACCEPTING_TRAFFIC으로 바꾼다.
+ * 백그라운드에서 아직 끝나지 않은 작업(데이터 넣기 등)이 있으면 다시 REFUSING_TRAFFIC으로 돌려놓고,
+ * 작업이 전부 끝나면 그때 ACCEPTING_TRAFFIC으로 바꾼다.
+ * liveness는 건드리지 않으니 /actuator/health/liveness와 /hello는 바로 응답한다.
+ *
+ * hold/release/onReadinessChange는 서로 겹치지 않게 synchronized로 묶는다.
+ * 안 그러면 isHeld() 확인과 REFUSING_TRAFFIC 발행 사이에 마지막 release()가 끼어들어
+ * ACCEPTING_TRAFFIC을 먼저 내보내고, 그 뒤에 나간 REFUSING_TRAFFIC이 영영 풀리지 않는다.
+ * 이벤트는 같은 스레드에서 동기로 전달되니 release()가 발행한 이벤트를 받아도 다시 락을 잡을 수 있다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadinessGate {
+
+    private final ApplicationEventPublisher publisher;
+    private final StartupTimings startupTimings;
+
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * ApplicationReadyEvent 전에(@PostConstruct 등에서) 등록해야 readiness가 막힌다.
+     */
+    public synchronized void hold(String task) {
+        pending.add(task);
+    }
+
+    public synchronized void release(String task) {
+        if (pending.remove(task) && pending.isEmpty()) {
+            log.info("[startup] 대기 작업이 모두 끝나서 트래픽을 받습니다.");
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        }
+    }
+
+    public boolean isHeld() {
+        return !pending.isEmpty();
+    }
+
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        if (isHeld()) {
+            log.info("[startup] {} 가 끝날 때까지 readiness를 REFUSING_TRAFFIC으로 유지합니다.", pending);
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+            return;
+        }
+        startupTimings.mark("readiness-accepting");
+    }
+}
@@ -0,0 +1,50 @@
+package study.querydsl.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 기동 단계별로 JVM이 뜬 뒤 몇 ms가 지났는지 기록한다.
+ * context-started -> application-ready -> seed-done -> readiness-accepting -> first-request
+ */
+@Slf4j
+@Component
+public class StartupTimings {
+
+    private final Map<String, Long> phases = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public void mark(String phase) {
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (phases.putIfAbsent(phase, uptime) == null) {
+            log.info("[startup] {} = {}ms", phase, uptime);
+        }
+    }
+
+    public boolean isMarked(String phase) {
+        return phases.containsKey(phase);
+    }
+
+    public Map<String, Long> phases() {
+        synchronized (phases) {
+            return new LinkedHashMap<>(phases);
+        }
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void onStarted() {
+        mark("context-started");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        mark("application-ready");
+    }
+}
@@ -0,0 +1,164 @@
+package study.querydsl.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 배포 직후 첫 요청들이 느린 이유는 JIT 컴파일 전, 하이버네이트 query plan cache가 비어 있고, 커넥션 풀도 덜 찼기 때문이다.
+ * readiness를 열기 전에 대표적인 검색 조건/프로젝션을 read-only 트랜잭션으로 여러 번 돌려서 미리 데워둔다.
+ * 순서: 커넥션 풀 채우기 -> 조건별 쿼리 반복 -> readiness 열기. 걸린 시간은 /admin/startup의 warm-up-done에 나온다.
+ */
+@Slf4j
+@Component
+public class WarmUp {
+
+    private static final String WARM_UP_TASK = "warm-up";
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final DataSource dataSource;
+    private final TransactionTemplate readOnlyTx;
+    private final ReadinessGate readinessGate;
+    private final StartupTimings startupTimings;
+    private final boolean enabled;
+    private final int iterations;
+    private final int connectionPoolSize;
+
+    private volatile long lastDurationMillis = -1;
+
+    public WarmUp(MemberJpaRepository memberJpaRepository, DataSource dataSource,
+                  PlatformTransactionManager transactionManager,
+                  ReadinessGate readinessGate, StartupTimings startupTimings,
+                  @Value("${warm-up.enabled:false}") boolean enabled,
+                  @Value("${warm-up.iterations:200}") int iterations,
+                  @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize) {
+        this.memberJpaRepository = memberJpaRepository;
+        this.dataSource = dataSource;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.readinessGate = readinessGate;
+        this.startupTimings = startupTimings;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.connectionPoolSize = connectionPoolSize;
+    }
+
+    @PostConstruct
+    public void holdReadiness() {
+        if (enabled) {
+            readinessGate.hold(WARM_UP_TASK);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpInBackground() {
+        if (!enabled) {
+            return;
+        }
+        Thread warmer = new Thread(() -> {
+            try {
+                run(iterations);
+            } catch (RuntimeException e) {
+                //실패해도 조금 느릴 뿐이니 readiness는 연다.
+                log.warn("[startup] warm-up 실패", e);
+            } finally {
+                readinessGate.release(WARM_UP_TASK);
+            }
+        }, WARM_UP_TASK);
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
+    /**
+     * @return 걸린 시간(ms)
+     */
+    public long run(int iterations) {
+        long start = System.nanoTime();
+        startupTimings.mark("warm-up-start");
+        fillConnectionPool();
+
+        List<MemberSearchCondition> conditions = representativeConditions();
+        for (int i = 0; i < iterations; i++) {
+            for (MemberSearchCondition condition : conditions) {
+                readOnlyTx.executeWithoutResult(status -> {
+                    memberJpaRepository.search(condition);
+                    memberJpaRepository.searchByBuilder(condition);
+                    memberJpaRepository.searchPage(condition, PageRequest.of(0, 20));
+                    memberJpaRepository.count(condition);
+                });
+            }
+            readOnlyTx.executeWithoutResult(status -> memberJpaRepository.findAllByIdsAsDto(List.of(1L, 2L, 3L)));
+        }
+
+        lastDurationMillis = (System.nanoTime() - start) / 1_000_000;
+        startupTimings.mark("warm-up-done");
+        log.info("[startup] warm-up {}회 x 조건 {}개 완료: {}ms", iterations, conditions.size(), lastDurationMillis);
+        return lastDurationMillis;
+    }
+
+    public long lastDurationMillis() {
+        return lastDurationMillis;
+    }
+
+    /**
+     * 풀 크기만큼 커넥션을 동시에 빌렸다가 돌려줘서 첫 요청들이 커넥션 생성을 기다리지 않게 한다.
+     */
+    private void fillConnectionPool() {
+        List<Connection> connections = new ArrayList<>();
+        try {
+            for (int i = 0; i < connectionPoolSize; i++) {
+                connections.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            log.warn("[startup] 커넥션 풀을 {}개까지 채우지 못했습니다: {}", connectionPoolSize, e.getMessage());
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.debug("커넥션 반환 실패", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * /v1/members 에 실제로 들어오는 조건 모양들. 값보다 어떤 조건이 켜져 있는지(JPQL 모양)가 중요하다.
+     */
+    private static List<MemberSearchCondition> representativeConditions() {
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        conditions.add(new MemberSearchCondition());
+        conditions.add(condition("member1", null, null, null, false));
+        conditions.add(condition("MEMBER1", null, null, null, true));
+        conditions.add(condition(null, "teamA", null, null, false));
+        conditions.add(condition(null, null, 10, 40, false));
+        conditions.add(condition(null, "teamB", 35, 40, false));
+        conditions.add(condition("member1", "teamA", 10, 40, false));
+        return conditions;
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe,
+                                                   boolean ignoreCase) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        condition.setUsernameIgnoreCase(ignoreCase);
+        return condition;
+    }
+}
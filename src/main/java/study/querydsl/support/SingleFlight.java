@@ -0,0 +1,63 @@
+package study.querydsl.support;
+
+import study.querydsl.deadline.RequestDeadline;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 같은 key로 동시에 들어온 호출은 먼저 온 하나(leader)만 실제로 실행하고, 나머지는 그 결과를 같이 받는다.
+ * 실행이 끝나면 key를 바로 지우기 때문에 결과를 캐시하지는 않는다. (끝난 뒤 들어온 호출은 다시 실행)
+ * 기다리는 쪽은 자기 요청 deadline(RequestDeadline)까지만 기다린다. leader의 deadline이 더 길어도 같이 끌려가지 않는다.
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalesced.increment();
+            RequestDeadline deadline = RequestDeadline.current();
+            try {
+                return deadline == null ? leader.join() : deadline.await(leader);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        executed.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public long executedCount() {
+        return executed.sum();
+    }
+
+    public long coalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
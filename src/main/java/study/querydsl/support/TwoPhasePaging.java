@@ -0,0 +1,68 @@
+package study.querydsl.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * fetch join + offset/limit을 같이 쓰면 하이버네이트가 전체를 다 읽어서 메모리에서 자른다.
+ * (HHH000104: firstResult/maxResults specified with collection fetch; applying in memory!)
+ * 그래서 두 번에 나눠서 읽는다.
+ * 1. 같은 where/order by로 id만 페이징해서 읽는다. (DB가 limit을 건다)
+ * 2. 그 id들로 fetch join 쿼리를 날리고, 1번의 순서대로 다시 정렬한다.
+ * 한 페이지에 드는 메모리와 시간이 테이블 크기가 아니라 페이지 크기에 비례한다.
+ *
+ * idQuery에는 ToOne join만 넣어야 한다. 컬렉션을 join하면 id가 중복돼서 페이지 크기가 틀어진다.
+ */
+public final class TwoPhasePaging {
+
+    private TwoPhasePaging() {
+    }
+
+    /**
+     * @param idQuery    select(id) + from + where + orderBy 까지 만든 쿼리. offset/limit은 여기서 건다.
+     * @param fetchByIds id 목록으로 fetch join 해서 읽는 쿼리. 순서는 신경 안 써도 된다.
+     * @param idOf       결과에서 id 꺼내기
+     * @param count      전체 건수. 마지막 페이지처럼 필요 없을 땐 호출하지 않는다.
+     */
+    public static <T> Page<T> fetchPage(JPAQuery<Long> idQuery,
+                                        Pageable pageable,
+                                        Function<List<Long>, List<T>> fetchByIds,
+                                        Function<T, Long> idOf,
+                                        LongSupplier count) {
+        List<Long> ids = idQuery
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        return PageableExecutionUtils.getPage(fetchInOrder(ids, fetchByIds, idOf), pageable, count);
+    }
+
+    static <T> List<T> fetchInOrder(List<Long> ids, Function<List<Long>, List<T>> fetchByIds, Function<T, Long> idOf) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //컬렉션 fetch join이면 같은 엔티티가 행 수만큼 중복해서 나오니 id로 한 번 모은다.
+        Map<Long, T> byId = new HashMap<>();
+        for (T row : fetchByIds.apply(ids)) {
+            byId.putIfAbsent(idOf.apply(row), row);
+        }
+        List<T> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T row = byId.get(id);
+            //1번과 2번 사이에 지워진 행은 빠진다.
+            if (row != null) {
+                ordered.add(row);
+            }
+        }
+        return ordered;
+    }
+}
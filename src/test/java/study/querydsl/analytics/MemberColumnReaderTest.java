@@ -0,0 +1,83 @@
+package study.querydsl.analytics;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class MemberColumnReaderTest {
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberColumnReader memberColumnReader;
+
+    @Test
+    public void sameAggregatesAsTupleQuery() {
+        Team teamA = new Team("columnA");
+        Team teamB = new Team("columnB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 100; i++) {
+            em.persist(new Member("column" + i, i, i % 3 == 0 ? teamA : teamB));
+        }
+        em.persist(new Member("columnNoTeam", 50));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        MemberColumns columns = memberColumnReader.read(condition);
+
+        Tuple expected = queryFactory
+                .select(member.count(), member.age.sum(), member.age.max(), member.age.min())
+                .from(member)
+                .where(member.age.goe(10))
+                .fetchOne();
+        IntSummaryStatistics actual = columns.ageStatistics();
+        assertThat(actual.getCount()).isEqualTo(expected.get(member.count()));
+        assertThat((int) actual.getSum()).isEqualTo(expected.get(member.age.sum()));
+        assertThat(actual.getMax()).isEqualTo(expected.get(member.age.max()));
+        assertThat(actual.getMin()).isEqualTo(expected.get(member.age.min()));
+
+        List<Tuple> byTeam = queryFactory
+                .select(team.name, member.age.avg())
+                .from(member)
+                .join(member.team, team)
+                .where(member.age.goe(10), team.name.in("columnA", "columnB"))
+                .groupBy(team.name)
+                .fetch();
+        Map<String, Double> averages = columns.averageAgeByTeam();
+        for (Tuple tuple : byTeam) {
+            assertThat(averages.get(tuple.get(team.name))).isEqualTo(tuple.get(member.age.avg()));
+        }
+
+        //팀 이름은 사전에 한 번씩만 들어간다.
+        assertThat(columns.teamDictionary()).contains("columnA", "columnB").doesNotHaveDuplicates();
+        int row = columns.size() - 1;
+        assertThat(columns.teamName(row)).isNull();
+        assertThat(columns.teamCode(row)).isEqualTo(MemberColumns.NO_TEAM);
+        assertThat(columns.age(row)).isEqualTo(50);
+    }
+}
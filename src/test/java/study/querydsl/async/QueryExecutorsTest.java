@@ -0,0 +1,59 @@
+package study.querydsl.async;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryExecutorsTest {
+
+    /**
+     * search 풀이 느린 쿼리로 꽉 차도 changes 풀은 그대로 돈다.
+     */
+    @Test
+    public void slowEndpointDoesNotStarveOthers() throws Exception {
+        //커넥션 4개를 두 엔드포인트가 2개씩 나눠 갖고, 큐는 1칸
+        QueryExecutors executors = new QueryExecutors(4, List.of("search", "changes"), 1);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < 3; i++) {
+                executors.submit("search", () -> {
+                    started.countDown();
+                    return await(release);
+                });
+            }
+            assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+            assertThatThrownBy(() -> executors.submit("search", () -> "rejected"))
+                    .isInstanceOf(RejectedExecutionException.class);
+
+            CompletableFuture<String> changes = executors.submit("changes", () -> "ok");
+            assertThat(changes.get(1, TimeUnit.SECONDS)).isEqualTo("ok");
+
+            QueryExecutorStats search = executors.stats().get(0);
+            assertThat(search.getName()).isEqualTo("search");
+            assertThat(search.getMaxThreads()).isEqualTo(2);
+            assertThat(search.getActiveThreads()).isEqualTo(2);
+            assertThat(search.getQueued()).isEqualTo(1);
+            assertThat(search.getRejected()).isEqualTo(1);
+        } finally {
+            release.countDown();
+            executors.shutdown();
+        }
+    }
+
+    private static String await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slow";
+    }
+}
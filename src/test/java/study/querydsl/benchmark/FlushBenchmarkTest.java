@@ -0,0 +1,62 @@
+package study.querydsl.benchmark;
+
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+/**
+ * 영속성 컨텍스트에 Member 10만 개를 올려두고 일부만 바꿨을 때 flush 시간을 잰다.
+ * 바이트코드 향상이 없으면 flush 때마다 10만 개 전부를 스냅샷과 비교하고,
+ * 향상이 있으면 변경된 엔티티만 본다.
+ *
+ * ./gradlew benchmark            (향상 O)
+ * ./gradlew benchmark -PnoEnhance (향상 X)
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Transactional
+class FlushBenchmarkTest {
+
+    private static final int MEMBER_COUNT = 100_000;
+    private static final int ROUNDS = 5;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Test
+    public void flushWithManyManagedMembers() {
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            em.persist(new Member("member" + i, i % 100));
+            if (i % 1000 == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        em.flush();
+        em.clear();
+
+        List<Member> members = em.createQuery("select m from Member m", Member.class)
+                .getResultList();
+        boolean enhanced = members.get(0) instanceof SelfDirtinessTracker;
+        System.out.println("enhanced = " + enhanced + ", managed = " + members.size());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            //1%만 바꾼다.
+            for (int i = round; i < members.size(); i += 100) {
+                Member member = members.get(i);
+                member.setAge(member.getAge() + 1);
+            }
+            long start = System.nanoTime();
+            em.flush();
+            long elapsed = System.nanoTime() - start;
+            System.out.println("round " + round + " flush = " + elapsed / 1_000_000 + "ms");
+        }
+    }
+}
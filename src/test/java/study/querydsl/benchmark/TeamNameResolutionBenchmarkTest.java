@@ -0,0 +1,85 @@
+package study.querydsl.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.TeamNameCache;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * teamName 검색을 team join(searchByBuilder)으로 할 때와
+ * 팀 이름 캐시로 team_id를 먼저 찾아서 member.team_id로 거를 때(search)를 비교한다.
+ *
+ * ./gradlew benchmark -Dbenchmark.members=5000000
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Transactional
+class TeamNameResolutionBenchmarkTest {
+
+    private static final int TEAM_COUNT = 1000;
+    private static final int ROUNDS = 20;
+    //시퀀스 값과 겹치지 않도록 큰 id부터 쓴다.
+    private static final long TEAM_ID_BASE = 900_000_000L;
+    private static final long MEMBER_ID_BASE = 1_000_000_000L;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    TeamNameCache teamNameCache;
+
+    @Test
+    public void joinVsResolvedTeamId() {
+        long members = Long.getLong("benchmark.members", 2_000_000L);
+        jdbcTemplate.update("insert into team (id, name, created_date, last_modified_date) "
+                + "select " + TEAM_ID_BASE + " + x, 'benchTeam' || x, now(), now() from system_range(0, " + (TEAM_COUNT - 1) + ")");
+        jdbcTemplate.update("insert into member (member_id, username, normalized_username, age, team_id, created_date, last_modified_date) "
+                + "select " + MEMBER_ID_BASE + " + x, 'bench' || x, 'bench' || x, mod(x, 100), "
+                + TEAM_ID_BASE + " + mod(x, " + TEAM_COUNT + "), now(), now() from system_range(1, " + members + ")");
+        teamNameCache.invalidate();
+        System.out.println("members = " + members + ", teams = " + TEAM_COUNT);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("benchTeam7");
+        condition.setAgeGoe(90);
+
+        //두 방식의 결과는 같아야 한다.
+        assertThat(memberJpaRepository.search(condition))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(memberJpaRepository.searchByBuilder(condition));
+
+        measure("join (searchByBuilder)", condition, memberJpaRepository::searchByBuilder);
+        measure("resolved team_id (search)", condition, memberJpaRepository::search);
+    }
+
+    private void measure(String name, MemberSearchCondition condition,
+                         Function<MemberSearchCondition, List<MemberTeamDto>> search) {
+        //워밍업
+        for (int i = 0; i < 3; i++) {
+            search.apply(condition);
+        }
+        long total = 0;
+        int rows = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            condition.setTeamName("benchTeam" + (round * 37 % TEAM_COUNT));
+            long start = System.nanoTime();
+            rows = search.apply(condition).size();
+            total += System.nanoTime() - start;
+        }
+        System.out.printf("%-28s avg %.2f ms (rows/query = %d)%n", name, total / 1_000_000.0 / ROUNDS, rows);
+    }
+}
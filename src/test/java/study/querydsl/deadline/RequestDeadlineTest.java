@@ -0,0 +1,144 @@
+package study.querydsl.deadline;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.support.SingleFlight;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class RequestDeadlineTest {
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    public void after() {
+        RequestDeadline.clear();
+    }
+
+    @Test
+    public void queryRunsWithinDeadline() {
+        RequestDeadline.set(new RequestDeadline(2500));
+        Long count = queryFactory.select(member.count()).from(member).fetchOne();
+        assertThat(count).isNotNull();
+    }
+
+    @Test
+    public void expiredDeadlineSkipsDatabase() throws Exception {
+        RequestDeadline.set(new RequestDeadline(1));
+        Thread.sleep(5);
+        assertThatThrownBy(() -> queryFactory.selectFrom(member).fetch())
+                .isInstanceOf(DeadlineExceededException.class)
+                .hasMessageContaining("1ms");
+    }
+
+    @Test
+    public void cancelledDeadlineSkipsDatabase() {
+        RequestDeadline deadline = new RequestDeadline(10_000);
+        RequestDeadline.set(deadline);
+        queryFactory.selectFrom(member).fetch();
+
+        //클라이언트가 끊긴 뒤에 나가는 쿼리는 바로 실패한다.
+        deadline.cancel();
+        assertThatThrownBy(() -> queryFactory.selectFrom(member).fetch())
+                .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void budgetFromHeaderOrEndpoint() {
+        RequestDeadlineFilter filter = new RequestDeadlineFilter(10_000, 30_000, Map.of("/v1/members", 5_000L), List.of());
+
+        assertThat(filter.budgetMillis(new MockHttpServletRequest("GET", "/v2/members"))).isEqualTo(10_000);
+        assertThat(filter.budgetMillis(new MockHttpServletRequest("GET", "/v1/members"))).isEqualTo(5_000);
+
+        MockHttpServletRequest withHeader = new MockHttpServletRequest("GET", "/v1/members");
+        withHeader.addHeader(RequestDeadlineFilter.TIMEOUT_HEADER, "1500");
+        assertThat(filter.budgetMillis(withHeader)).isEqualTo(1_500);
+
+        MockHttpServletRequest tooLong = new MockHttpServletRequest("GET", "/v1/members");
+        tooLong.addHeader(RequestDeadlineFilter.TIMEOUT_HEADER, "999999");
+        assertThat(filter.budgetMillis(tooLong)).isEqualTo(30_000);
+    }
+
+    @Test
+    public void batchEndpointsAreExempt() {
+        RequestDeadlineFilter filter = new RequestDeadlineFilter(10_000, 30_000, Map.of(),
+                List.of("/admin/members/export", "/v1/members/import"));
+
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("POST", "/admin/members/export"))).isTrue();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("POST", "/v1/members/import"))).isTrue();
+        assertThat(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/v1/members"))).isFalse();
+    }
+
+    /**
+     * Querydsl select 말고도 update/delete, JdbcTemplate 쿼리도 deadline이 지나면 DB에 가지 않는다.
+     */
+    @Test
+    public void expiredDeadlineSkipsOtherQueryPaths() throws Exception {
+        RequestDeadline.set(new RequestDeadline(1));
+        Thread.sleep(5);
+        assertThatThrownBy(() -> queryFactory.update(member).set(member.age, 0).where(member.age.lt(0)).execute())
+                .isInstanceOf(DeadlineExceededException.class);
+        assertThatThrownBy(() -> queryFactory.delete(member).where(member.age.lt(0)).execute())
+                .isInstanceOf(DeadlineExceededException.class);
+        assertThatThrownBy(() -> jdbcTemplate.queryForObject("select count(*) from member", Long.class))
+                .isInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void queryPathsRunWithinDeadline() {
+        RequestDeadline.set(new RequestDeadline(2500));
+        assertThat(queryFactory.update(member).set(member.age, 0).where(member.age.lt(0)).execute()).isZero();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from member", Long.class)).isNotNull();
+    }
+
+    /**
+     * 합쳐진 요청도 자기 deadline이 지나면 leader를 더 기다리지 않는다.
+     */
+    @Test
+    public void coalescedCallerStopsAtItsOwnDeadline() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+            leaderStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }));
+        try {
+            assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            RequestDeadline.set(new RequestDeadline(50));
+            long start = System.nanoTime();
+            assertThatThrownBy(() -> singleFlight.execute("key", () -> "follower ran"))
+                    .isInstanceOf(DeadlineExceededException.class);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+            assertThat(singleFlight.coalescedCount()).isEqualTo(1);
+        } finally {
+            release.countDown();
+        }
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("done");
+    }
+}
@@ -0,0 +1,84 @@
+package study.querydsl.entity;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.LazyLoadGuard.assertNoLazyLoading;
+
+@SpringBootTest
+@Transactional
+class EntityEqualityTest {
+
+    @PersistenceContext
+    EntityManager em;
+
+    private Long teamId;
+
+    @BeforeEach
+    public void before() {
+        Team team = new Team("equalityTeam");
+        em.persist(team);
+        em.persist(new Member("equality1", 10, team));
+        em.persist(new Member("equality2", 20, team));
+        em.persist(new Member("equality3", 30, team));
+        em.flush();
+        em.clear();
+        teamId = team.getId();
+    }
+
+    @Test
+    public void equalityDoesNotTouchLazyAssociations() {
+        Team team = em.find(Team.class, teamId);
+        List<Member> members = em.createQuery("select m from Member m where m.team.id = :teamId order by m.id", Member.class)
+                .setParameter("teamId", teamId)
+                .getResultList();
+
+        assertNoLazyLoading(em, () -> {
+            Set<Member> set = new HashSet<>(members);
+            assertThat(set).hasSize(3);
+            assertThat(set.contains(members.get(0))).isTrue();
+            assertThat(members.get(0)).isNotEqualTo(members.get(1));
+            //영속성 컨텍스트 안에서는 같은 행이면 같은 객체라 members.team은 위에서 찾은 team이다.
+            assertThat(team).isEqualTo(members.get(0).getTeam());
+            assertThat(new HashSet<>(List.of(team))).hasSize(1);
+            members.forEach(Object::toString);
+            team.toString();
+        });
+    }
+
+    @Test
+    public void equalsByIdAcrossPersistenceContexts() {
+        Member before = em.createQuery("select m from Member m where m.username = 'equality1'", Member.class)
+                .getSingleResult();
+        em.clear();
+        Member after = em.find(Member.class, before.getId());
+
+        assertThat(after).isNotSameAs(before);
+        assertThat(after).isEqualTo(before);
+        assertThat(after.hashCode()).isEqualTo(before.hashCode());
+
+        //저장 전 엔티티는 id가 없으니 자기 자신하고만 같다.
+        Member transient1 = new Member("new", 1);
+        Member transient2 = new Member("new", 1);
+        assertThat(transient1).isNotEqualTo(transient2);
+        assertThat(new HashSet<>(List.of(transient1, transient2))).hasSize(2);
+    }
+
+    @Test
+    public void guardDetectsCollectionLoading() {
+        Team team = em.find(Team.class, teamId);
+        assertThatThrownBy(() -> assertNoLazyLoading(em, () -> team.getMembers().forEach(Member::getAge)))
+                .isInstanceOf(AssertionError.class)
+                .hasMessageContaining("컬렉션 초기화: 1번");
+    }
+}
@@ -0,0 +1,44 @@
+package study.querydsl.entity;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManager;
+import java.util.function.Supplier;
+
+/**
+ * 테스트용: 블록 안에서 지연 로딩(프록시 초기화, 컬렉션 초기화)이 한 번이라도 일어나면 실패시킨다.
+ * 하이버네이트 통계의 entity/collection fetch 수가 늘었는지로 본다. (fetch = 지연 로딩으로 따로 가져온 것)
+ *
+ * 사용 예)
+ * LazyLoadGuard.assertNoLazyLoading(em, () -> new HashSet<>(members));
+ */
+public final class LazyLoadGuard {
+
+    private LazyLoadGuard() {
+    }
+
+    public static void assertNoLazyLoading(EntityManager em, Runnable action) {
+        assertNoLazyLoading(em, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    public static <T> T assertNoLazyLoading(EntityManager em, Supplier<T> action) {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        long entityFetches = statistics.getEntityFetchCount();
+        long collectionFetches = statistics.getCollectionFetchCount();
+
+        T result = action.get();
+
+        long entityDelta = statistics.getEntityFetchCount() - entityFetches;
+        long collectionDelta = statistics.getCollectionFetchCount() - collectionFetches;
+        if (entityDelta > 0 || collectionDelta > 0) {
+            throw new AssertionError("예상하지 못한 지연 로딩이 일어났습니다. 프록시 초기화: " + entityDelta
+                    + "번, 컬렉션 초기화: " + collectionDelta + "번");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package study.querydsl.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "member.export.row-group-size=3")
+@Transactional
+class MemberExportJobTest {
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    MemberExportJob memberExportJob;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void exportCsvAndColumnar() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 7; i++) {
+            em.persist(new Member("export,member" + i, i, i % 2 == 0 ? teamA : null));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        ExportResult result = memberExportJob.export(condition, dir, false);
+
+        List<String> lines = Files.readAllLines(dir.resolve(MemberExportJob.CSV_FILE));
+        List<MemberTeamDto> rows;
+        try (InputStream in = Files.newInputStream(dir.resolve(MemberExportJob.COLUMNAR_FILE))) {
+            rows = MemberColumnarFile.readAll(in);
+        }
+        assertThat(lines).hasSize((int) result.getExportedRows() + 1);
+        assertThat(rows).hasSize((int) result.getExportedRows());
+        assertThat(rows).extracting("username").contains("export,member0", "export,member6");
+        //쉼표가 들어간 값은 따옴표로 감싼다.
+        assertThat(lines).anyMatch(line -> line.contains(",\"export,member0\",0,"));
+        assertThat(rows).filteredOn(r -> "export,member1".equals(r.getUsername()))
+                .extracting("teamName").containsOnlyNulls();
+
+        //다 끝난 뒤 이어쓰기를 하면 새로 쓸 행이 없고 파일도 그대로다.
+        ExportResult resumed = memberExportJob.export(condition, dir, true);
+        assertThat(resumed.getExportedRows()).isZero();
+        assertThat(resumed.getResumedRows()).isEqualTo(result.getExportedRows());
+        assertThat(Files.readAllLines(dir.resolve(MemberExportJob.CSV_FILE))).isEqualTo(lines);
+    }
+}
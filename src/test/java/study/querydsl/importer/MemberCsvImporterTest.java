@@ -0,0 +1,58 @@
+package study.querydsl.importer;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest(properties = "member.import.batch-size=2")
+@Transactional
+class MemberCsvImporterTest {
+
+    @Autowired
+    MemberCsvImporter memberCsvImporter;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Test
+    public void importCsv() throws Exception {
+        String csv = "username,age,teamName\n"
+                + "import1,10,importTeamA\n"
+                + "\"import,2\",20,importTeamA\n"
+                + "import3,abc,importTeamB\n"
+                + "import4,40,importTeamB\n"
+                + "import5,50,\n";
+
+        ImportResult result = memberCsvImporter.importCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(result.getLines()).isEqualTo(5);
+        assertThat(result.getImportedRows()).isEqualTo(4);
+        assertThat(result.getFailedRows()).isEqualTo(1);
+        assertThat(result.getCreatedTeams()).isEqualTo(2);
+        assertThat(result.getErrors()).hasSize(1).first().asString().startsWith("line 4");
+
+        List<Member> imported = queryFactory
+                .selectFrom(member)
+                .where(member.username.startsWith("import"))
+                .orderBy(member.age.asc())
+                .fetch();
+        assertThat(imported).extracting("username").containsExactly("import1", "import,2", "import4", "import5");
+        assertThat(imported.get(0).getTeam().getName()).isEqualTo("importTeamA");
+        assertThat(imported.get(3).getTeam()).isNull();
+    }
+
+    @Test
+    public void parseCsvLine() {
+        assertThat(CsvLine.parse("a,\"b,c\",\"d\"\"e\",")).containsExactly("a", "b,c", "d\"e", "");
+    }
+}
@@ -0,0 +1,104 @@
+package study.querydsl.query;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class QueryPlanMonitorTest {
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    QueryPlanMonitor queryPlanMonitor;
+
+    @Test
+    public void countLiterals() {
+        assertThat(QueryPlanMonitor.countLiterals(
+                "select member1 from Member member1 where member1.username = ?1")).isEqualTo(0);
+        //함수 이름은 리터럴이 아니다.
+        assertThat(QueryPlanMonitor.countLiterals(
+                "select function('replace', member1.username, ?1, ?2) from Member member1")).isEqualTo(0);
+        assertThat(QueryPlanMonitor.countLiterals(
+                "select member1 from Member member1 where member1.username = 'member1' and member1.age > 10")).isEqualTo(2);
+    }
+
+    @Test
+    public void literalKinds() {
+        assertThat(QueryPlanMonitor.literalKinds(
+                "select member1 from Member member1 where member1.username = ?1")).isEqualTo(0);
+        assertThat(QueryPlanMonitor.literalKinds(
+                "select member1 from Member member1 where member1.username = 'member1'"))
+                .isEqualTo(QueryPlanMonitor.STRING_LITERALS);
+        //문자열 안의 숫자는 숫자 리터럴이 아니다.
+        assertThat(QueryPlanMonitor.literalKinds(
+                "select member1 from Member member1 where member1.username = 'member10'"))
+                .isEqualTo(QueryPlanMonitor.STRING_LITERALS);
+        assertThat(QueryPlanMonitor.literalKinds(
+                "select substring(member1.username, 1, 3) from Member member1 where member1.age > ?1"))
+                .isEqualTo(QueryPlanMonitor.NUMERIC_LITERALS);
+    }
+
+    /**
+     * 숫자 리터럴은 바인딩으로 바꾸지 않고 따로 센다.
+     */
+    @Test
+    public void numericTemplateLiteralIsReported() {
+        em.persist(new Member("member1", 10));
+        long before = queryPlanMonitor.stats().getNumericLiteralQueryCount();
+
+        List<String> result = queryFactory
+                .select(member.username)
+                .from(member)
+                .where(Expressions.stringTemplate("substring({0}, 1, 6)", member.username).eq("member"))
+                .fetch();
+
+        assertThat(result).contains("member1");
+        assertThat(queryPlanMonitor.stats().getNumericLiteralQueryCount() - before).isEqualTo(1);
+    }
+
+    /**
+     * 템플릿에 리터럴을 직접 써도 바인딩 파라미터로 바뀌어서 값이 달라도 JPQL은 하나만 나와야 한다.
+     */
+    @Test
+    public void templateLiteralIsNormalized() {
+        em.persist(new Member("member1", 10));
+        em.persist(new Member("member2", 20));
+
+        List<String> m1 = findReplaced("'M'", "M1");
+        List<String> x1 = findReplaced("'X'", "X1");
+        List<String> y2 = findReplaced("'Y'", "Y2");
+
+        assertThat(m1).containsExactly("member1");
+        assertThat(x1).containsExactly("member1");
+        assertThat(y2).containsExactly("member2");
+        assertThat(queryPlanMonitor.distinctPlansAt(QueryPlanMonitorTest.class.getName() + ".findReplaced"))
+                .isEqualTo(1);
+        System.out.println("stats = " + queryPlanMonitor.stats());
+    }
+
+    private List<String> findReplaced(String replacement, String expected) {
+        return queryFactory
+                .select(member.username)
+                .from(member)
+                .where(Expressions.stringTemplate("function('replace', {0}, 'member', " + replacement + ")",
+                        member.username).eq(expected))
+                .fetch();
+    }
+}
@@ -0,0 +1,59 @@
+package study.querydsl.slowquery;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//기준을 0ms로 낮춰서 모든 쿼리를 느린 쿼리로 잡는다.
+@SpringBootTest(properties = {"slow-query.threshold-ms=0", "slow-query.capacity=8"})
+@Transactional
+class SlowQueryListenerTest {
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    SlowQueryListener slowQueryListener;
+
+    @Test
+    public void captureWithCallSiteAndRowCount() {
+        em.persist(new Member("slow1", 10));
+        em.persist(new Member("slow2", 20));
+        em.flush();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("slow2");
+        memberJpaRepository.search(condition);
+
+        List<SlowQuery> recent = slowQueryListener.recent(1);
+        assertThat(recent).hasSize(1);
+        SlowQuery query = recent.get(0);
+        assertThat(query.getSqlWithValues()).contains("'slow2'");
+        assertThat(query.getCallSite()).startsWith(MemberJpaRepository.class.getName() + ".search");
+        assertThat(query.getRowCount()).isEqualTo(1);
+        assertThat(query.getHttpRequest()).isNull();
+    }
+
+    @Test
+    public void ringBufferKeepsOnlyLatest() {
+        SlowQueryRingBuffer buffer = new SlowQueryRingBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.put(new SlowQuery(buffer.nextSequence(), LocalDateTime.now(), "sql" + i, "sql" + i, 1, null, null, null, -1));
+        }
+        assertThat(buffer.recent(10)).extracting("sql").containsExactly("sql4", "sql3", "sql2");
+    }
+}
@@ -0,0 +1,32 @@
+package study.querydsl.startup;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//테스트 프로파일에서는 warm-up.enabled가 없어서 기동 때는 안 돌고, 여기서 직접 돌린다.
+@SpringBootTest
+class WarmUpTest {
+
+    @Autowired
+    WarmUp warmUp;
+
+    @Autowired
+    StartupTimings startupTimings;
+
+    @Autowired
+    ReadinessGate readinessGate;
+
+    @Test
+    public void runReportsDuration() {
+        assertThat(readinessGate.isHeld()).isFalse();
+
+        long millis = warmUp.run(3);
+
+        assertThat(millis).isGreaterThanOrEqualTo(0);
+        assertThat(warmUp.lastDurationMillis()).isEqualTo(millis);
+        assertThat(startupTimings.isMarked("warm-up-done")).isTrue();
+    }
+}
@@ -0,0 +1,85 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    /**
+     * 50개 스레드가 동시에 같은 key로 "DB 조회"를 하면 실제 조회는 한 번만 일어나야 한다.
+     * leader는 나머지 49개가 전부 합류할 때까지 끝나지 않으므로 항상 겹친다.
+     */
+    @Test
+    public void concurrentIdenticalCallsShareOneExecution() throws Exception {
+        SingleFlight<String, List<String>> singleFlight = new SingleFlight<>();
+        AtomicInteger dbQueries = new AtomicInteger();
+        int threads = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                ready.countDown();
+                start.await();
+                return singleFlight.execute("teamA", () -> {
+                    dbQueries.incrementAndGet();
+                    awaitCoalesced(singleFlight, threads - 1);
+                    return List.of("member1", "member2");
+                });
+            }));
+        }
+        ready.await();
+        start.countDown();
+        for (Future<List<String>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).containsExactly("member1", "member2");
+        }
+        executor.shutdown();
+
+        System.out.println("dbQueries = " + dbQueries.get() + ", coalesced = " + singleFlight.coalescedCount());
+        assertThat(dbQueries.get()).isEqualTo(1);
+        assertThat(singleFlight.executedCount()).isEqualTo(1);
+        assertThat(singleFlight.coalescedCount()).isEqualTo(threads - 1);
+        assertThat(singleFlight.inFlightCount()).isZero();
+
+        //끝난 뒤에는 다시 실행한다.
+        singleFlight.execute("teamA", () -> {
+            dbQueries.incrementAndGet();
+            return List.of();
+        });
+        assertThat(singleFlight.executedCount()).isEqualTo(dbQueries.get());
+    }
+
+    @Test
+    public void failureIsNotCached() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        assertThatThrownBy(() -> singleFlight.execute("key", () -> {
+            throw new IllegalStateException("db down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(singleFlight.execute("key", () -> "ok")).isEqualTo("ok");
+    }
+
+    private static void awaitCoalesced(SingleFlight<?, ?> singleFlight, long followers) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.coalescedCount() < followers && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChangeListener;
+import study.querydsl.repository.MemberAgeAccumulator;
+import study.querydsl.repository.MemberLeaderboard;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//flush는 항상 새 트랜잭션에서 커밋하므로 테스트 트랜잭션 안의 회원은 보이지 않는다.
+//그래서 이 테스트는 회원을 먼저 커밋해 두고 끝나면 지운다.
+@SpringBootTest(classes = QuerydslApplication.class)
+class MemberAgeAccumulatorTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MemberLeaderboard memberLeaderboard;
+
+    private MemberAgeAccumulator accumulator;
+    private final List<Long> created = new ArrayList<>();
+
+    //주기 flush가 끼어들지 않게 flush는 테스트에서만 직접 부른다.
+    @BeforeEach
+    public void before() {
+        accumulator = new MemberAgeAccumulator(jdbcTemplate, transactionManager, Duration.ofHours(1), Integer.MAX_VALUE);
+    }
+
+    @AfterEach
+    public void after() throws InterruptedException {
+        accumulator.shutdown();
+        for (Long id : created) {
+            jdbcTemplate.update("delete from member where member_id = ?", id);
+        }
+        MemberChangeListener.bulkChanged();
+    }
+
+    @Test
+    public void concurrentIncrementsAreFlushedAsOneUpdatePerMember() throws Exception {
+        Member hot = persist("accHot", 10);
+        Member cold = persist("accCold", 20);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        accumulator.increment(hot.getId(), 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        accumulator.increment(cold.getId(), 3);
+
+        //flush 전에도 더한 값이 보인다.
+        assertThat(accumulator.pendingDelta(hot.getId())).isEqualTo(8000);
+        assertThat(accumulator.age(hot.getId())).isEqualTo(8010);
+        assertThat(accumulator.age(cold.getId())).isEqualTo(23);
+        assertThat(ageInDb(hot.getId())).isEqualTo(10);
+
+        //8001번의 increment가 update 두 번으로 끝난다.
+        assertThat(accumulator.flush()).isEqualTo(2);
+        assertThat(ageInDb(hot.getId())).isEqualTo(8010);
+        assertThat(ageInDb(cold.getId())).isEqualTo(23);
+        assertThat(accumulator.age(hot.getId())).isEqualTo(8010);
+        assertThat(accumulator.pendingDelta(hot.getId())).isZero();
+        assertThat(accumulator.flush()).isZero();
+
+        assertThat(accumulator.stats().get("increments")).isEqualTo(8001);
+        assertThat(accumulator.stats().get("updatedRows")).isEqualTo(2);
+    }
+
+    @Test
+    public void incrementAfterFlushIsKept() {
+        Member member = persist("accAgain", 0);
+
+        accumulator.increment(member.getId(), 5);
+        accumulator.flush();
+        accumulator.increment(member.getId(), -2);
+
+        assertThat(accumulator.age(member.getId())).isEqualTo(3);
+        accumulator.flush();
+        assertThat(ageInDb(member.getId())).isEqualTo(3);
+    }
+
+    @Test
+    public void deletedMemberIsDropped() {
+        accumulator.increment(-1L, 1);
+
+        assertThat(accumulator.age(-1L)).isNull();
+        assertThat(accumulator.flush()).isZero();
+        assertThat(accumulator.stats().get("droppedMembers")).isEqualTo(1);
+    }
+
+    @Test
+    public void shutdownFlushesPending() throws InterruptedException {
+        Member member = persist("accShutdown", 1);
+
+        accumulator.increment(member.getId(), 1);
+        accumulator.shutdown();
+
+        assertThat(ageInDb(member.getId())).isEqualTo(2);
+    }
+
+    /**
+     * flush가 계속 도는 동안 increment 직후 age()를 읽으면 항상 지금까지 더한 값이 그대로 보여야 한다.
+     * flush 단계(옮기는 중, 쓰는 중, 커밋 중) 어디에서 읽어도 덜 세거나 두 번 세면 안 된다.
+     */
+    @Test
+    public void ageIsExactWhileFlushing() throws Exception {
+        Member member = persist("accRace", 100);
+        int increments = 2000;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger flushed = new AtomicInteger();
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> flusher = pool.submit(() -> {
+                while (!done.get()) {
+                    if (accumulator.flush() > 0) {
+                        flushed.incrementAndGet();
+                    }
+                }
+            });
+            for (int i = 1; i <= increments; i++) {
+                accumulator.increment(member.getId(), 1);
+                assertThat(accumulator.age(member.getId())).isEqualTo(100 + i);
+            }
+            done.set(true);
+            flusher.get(10, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            pool.shutdown();
+        }
+
+        System.out.println("flushes during the run = " + flushed.get());
+        assertThat(flushed.get()).isPositive();
+        accumulator.flush();
+        assertThat(ageInDb(member.getId())).isEqualTo(100 + increments);
+    }
+
+    /**
+     * 바깥 트랜잭션 안에서 flush 해도 바로 커밋되고, 바깥이 롤백돼도 반영은 남는다.
+     */
+    @Test
+    public void flushCommitsIndependentlyOfCallerTransaction() {
+        Member member = persist("accOuter", 1);
+        accumulator.increment(member.getId(), 4);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            assertThat(accumulator.flush()).isEqualTo(1);
+            status.setRollbackOnly();
+        });
+
+        assertThat(ageInDb(member.getId())).isEqualTo(5);
+        assertThat(accumulator.age(member.getId())).isEqualTo(5);
+    }
+
+    /**
+     * flush는 순위표를 통째로 버리지 않고 바뀐 회원만 다시 읽어서 넣는다.
+     */
+    @Test
+    public void flushUpdatesLeaderboardWithoutRebuild() {
+        Member member = persist("accBoard", 3_000_000);
+        assertThat(memberLeaderboard.top(null).get(0).getMemberId()).isEqualTo(member.getId());
+        long rebuilds = memberLeaderboard.rebuildCount();
+
+        accumulator.increment(member.getId(), 5);
+        accumulator.flush();
+
+        assertThat(memberLeaderboard.top(null).get(0).getAge()).isEqualTo(3_000_005);
+        assertThat(memberLeaderboard.rebuildCount()).isEqualTo(rebuilds);
+    }
+
+    private Member persist(String username, int age) {
+        Member member = new TransactionTemplate(transactionManager).execute(status -> {
+            Member saved = new Member(username, age);
+            em.persist(saved);
+            return saved;
+        });
+        created.add(member.getId());
+        return member;
+    }
+
+    private Integer ageInDb(Long memberId) {
+        return jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, memberId);
+    }
+}
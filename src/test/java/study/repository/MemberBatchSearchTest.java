@@ -0,0 +1,159 @@
+package study.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberBatchQuery;
+import study.querydsl.dto.MemberBatchResponse;
+import study.querydsl.dto.MemberBatchResult;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberBatchSearch;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.TeamNameCache;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = QuerydslApplication.class)
+@Transactional
+class MemberBatchSearchTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private MemberBatchSearch memberBatchSearch;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    private TeamNameCache teamNameCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void mergeTeamSearchesIntoOneQuery() {
+        Team teamA = new Team("batchA");
+        Team teamB = new Team("batchB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("batch" + i, i * 10, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        MemberBatchResponse response = memberBatchSearch.search(List.of(
+                query("a", "batchA", 30),
+                query("b", "batchB", 30),
+                query("a-again", "batchA", 30),
+                query("none", "noSuchTeam", 30),
+                query("young", null, null)));
+
+        //a, b, a-again, none 은 SQL 하나, young은 따로
+        assertThat(response.getQueries()).isEqualTo(2);
+        List<MemberBatchResult> results = response.getResults();
+        assertThat(results).extracting("tag").containsExactly("a", "b", "a-again", "none", "young");
+        assertThat(results.get(0).getMembers()).extracting("username").containsExactly("batch4", "batch6", "batch8");
+        assertThat(results.get(0).isMerged()).isTrue();
+        assertThat(results.get(1).getMembers()).extracting("username").containsExactly("batch3", "batch5", "batch7", "batch9");
+        assertThat(results.get(2).getMembers()).isEqualTo(results.get(0).getMembers());
+        assertThat(results.get(3).getMembers()).isEmpty();
+        assertThat(results.get(1).getMembers()).extracting("teamName").containsOnly("batchB");
+    }
+
+    @Test
+    public void rowCapTruncates() {
+        Team team = new Team("capTeam");
+        em.persist(team);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("cap" + i, i, team));
+        }
+        em.flush();
+        em.clear();
+
+        MemberBatchSearch capped = new MemberBatchSearch(memberJpaRepository, teamNameCache, transactionManager, 10, 6);
+        MemberBatchResponse response = capped.search(List.of(
+                query("first", "capTeam", 5),
+                query("second", "capTeam", 0)));
+
+        assertThat(response.getTotalRows()).isEqualTo(6);
+        assertThat(response.getResults().get(0).getMembers()).hasSize(5);
+        assertThat(response.getResults().get(0).isTruncated()).isFalse();
+        assertThat(response.getResults().get(1).getMembers()).hasSize(1);
+        assertThat(response.getResults().get(1).isTruncated()).isTrue();
+
+        assertThatThrownBy(() -> capped.search(List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 합친 검색이 잘려도 마지막 행 뒤에 회원이 더 남은 팀만 truncated다.
+     */
+    @Test
+    public void mergedTruncationIsPerTag() {
+        Team small = new Team("truncSmall");
+        Team large = new Team("truncLarge");
+        em.persist(small);
+        em.persist(large);
+        //id 순으로 읽으니까 small 팀 회원이 먼저 나온다.
+        for (int i = 0; i < 3; i++) {
+            em.persist(new Member("small" + i, 20, small));
+        }
+        for (int i = 0; i < 5; i++) {
+            em.persist(new Member("large" + i, 20, large));
+        }
+        em.flush();
+        em.clear();
+
+        MemberBatchSearch capped = new MemberBatchSearch(memberJpaRepository, teamNameCache, transactionManager, 10, 6);
+        MemberBatchResponse response = capped.search(List.of(
+                query("small", "truncSmall", 20),
+                query("large", "truncLarge", 20)));
+
+        assertThat(response.getTotalRows()).isEqualTo(6);
+        MemberBatchResult smallResult = response.getResults().get(0);
+        MemberBatchResult largeResult = response.getResults().get(1);
+        assertThat(smallResult.getMembers()).hasSize(3);
+        assertThat(smallResult.isTruncated()).isFalse();
+        assertThat(largeResult.getMembers()).hasSize(3);
+        assertThat(largeResult.isTruncated()).isTrue();
+        //합친 검색 하나 + 어느 팀이 잘렸는지 보는 검색 하나
+        assertThat(response.getQueries()).isEqualTo(2);
+    }
+
+    @Test
+    public void unknownTeamRunsNoSqlAndInputIsUntouched() {
+        MemberBatchQuery ghost = query("ghost", " noSuchTeam ", null);
+        MemberBatchQuery noCondition = new MemberBatchQuery();
+        noCondition.setTag("all");
+        noCondition.setCondition(null);
+
+        MemberBatchResponse response = memberBatchSearch.search(List.of(ghost));
+        assertThat(response.getQueries()).isZero();
+        assertThat(response.getResults().get(0).getMembers()).isEmpty();
+        assertThat(response.getResults().get(0).isTruncated()).isFalse();
+
+        memberBatchSearch.search(List.of(ghost, noCondition));
+        assertThat(ghost.getCondition().getTeamName()).isEqualTo(" noSuchTeam ");
+        assertThat(noCondition.getCondition()).isNull();
+    }
+
+    private static MemberBatchQuery query(String tag, String teamName, Integer ageGoe) {
+        MemberBatchQuery query = new MemberBatchQuery();
+        query.setTag(tag);
+        query.getCondition().setTeamName(teamName);
+        query.getCondition().setAgeGoe(ageGoe);
+        return query;
+    }
+}
@@ -0,0 +1,139 @@
+package study.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.ChangeCursor;
+import study.querydsl.dto.MemberChangesDto;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberChangeRepository;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = QuerydslApplication.class)
+@Transactional
+class MemberChangeRepositoryTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private JPAQueryFactory queryFactory;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    //방금 쓴 행도 바로 받도록 settle-window 없이 만든다.
+    private MemberChangeRepository memberChangeRepository;
+
+    @BeforeEach
+    public void before() {
+        memberChangeRepository = new MemberChangeRepository(em, queryFactory, Duration.ZERO);
+    }
+
+    @Test
+    public void changesSinceCursorTest() throws InterruptedException {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.flush();
+
+        MemberChangesDto first = drain(memberChangeRepository.findChangesSince(null, 1000));
+        String cursor = first.getNextCursor();
+
+        Thread.sleep(5);
+        //엔티티 수정, bulk update, 삭제가 모두 다음 변경분에 잡혀야 한다.
+        member1.setUsername("member1-renamed");
+        em.flush();
+        memberJpaRepository.bulkAgePlus(20);
+        memberChangeRepository.delete(em.find(Member.class, member3.getId()));
+        em.flush();
+
+        MemberChangesDto second = memberChangeRepository.findChanges(ChangeCursor.parse(cursor), 1000);
+        assertThat(second.getMembers()).extracting("username").containsExactlyInAnyOrder("member1-renamed", "member2");
+        assertThat(second.getTeams()).isEmpty();
+        assertThat(second.getDeletedMemberIds()).containsExactly(member3.getId());
+        assertThat(second.isHasMore()).isFalse();
+
+        MemberChangesDto third = memberChangeRepository.findChanges(ChangeCursor.parse(second.getNextCursor()), 1000);
+        assertThat(third.getMembers()).isEmpty();
+        assertThat(third.getDeletedMemberIds()).isEmpty();
+    }
+
+    /**
+     * bulk update는 한 시각으로 여러 행을 찍는다. limit보다 많아도 id로 이어받아서 끝까지 다 받는다.
+     */
+    @Test
+    public void sameTimestampLargerThanLimitTest() throws InterruptedException {
+        for (int i = 0; i < 25; i++) {
+            em.persist(new Member("sameTime" + i, 9000));
+        }
+        em.flush();
+        MemberChangesDto start = drain(memberChangeRepository.findChangesSince(null, 1000));
+
+        Thread.sleep(5);
+        memberJpaRepository.bulkAgePlus(9000);
+
+        List<Long> received = new ArrayList<>();
+        ChangeCursor cursor = ChangeCursor.parse(start.getNextCursor());
+        for (int page = 0; page < 10; page++) {
+            MemberChangesDto changes = memberChangeRepository.findChanges(cursor, 10);
+            received.addAll(changes.getMembers().stream().map(MemberTeamDto::getMemberId).collect(Collectors.toList()));
+            cursor = ChangeCursor.parse(changes.getNextCursor());
+            if (!changes.isHasMore()) {
+                break;
+            }
+        }
+        assertThat(received).hasSize(25).doesNotHaveDuplicates();
+    }
+
+    /**
+     * settle-window 안에 찍힌 행은 아직 안 주고 cursor도 그 앞에 머문다.
+     */
+    @Test
+    public void settleWindowDefersRecentChangesTest() {
+        MemberChangeRepository settled = new MemberChangeRepository(em, queryFactory, Duration.ofHours(1));
+        MemberChangesDto before = drain(settled.findChangesSince(null, 1000));
+
+        em.persist(new Member("recent", 1));
+        em.flush();
+
+        MemberChangesDto changes = settled.findChanges(ChangeCursor.parse(before.getNextCursor()), 1000);
+        assertThat(changes.getMembers()).isEmpty();
+        assertThat(changes.getNextCursor()).isEqualTo(before.getNextCursor());
+    }
+
+    @Test
+    public void cursorRoundTripTest() {
+        ChangeCursor cursor = ChangeCursor.since(LocalDateTime.of(2026, 10, 19, 10, 15, 30, 123456000));
+        assertThat(ChangeCursor.parse(cursor.toString()).toString()).isEqualTo(cursor.toString());
+    }
+
+    //공유 DB라 다른 테스트가 남긴 변경까지 끝까지 받아서 cursor를 지금 위치로 맞춘다.
+    private MemberChangesDto drain(MemberChangesDto changes) {
+        while (changes.isHasMore()) {
+            changes = memberChangeRepository.findChanges(ChangeCursor.parse(changes.getNextCursor()), 1000);
+        }
+        return changes;
+    }
+}
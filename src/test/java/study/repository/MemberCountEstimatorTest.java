@@ -0,0 +1,79 @@
+package study.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.EstimatedPage;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberCountEstimator;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = QuerydslApplication.class)
+@Transactional
+class MemberCountEstimatorTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void approximateTotalTest() {
+        Team team = new Team("countTeam");
+        em.persist(team);
+        addMembers(team, 10);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("countTeam");
+        MemberCountEstimator estimator = new MemberCountEstimator(memberJpaRepository, em, Duration.ofMinutes(1), 5, 100);
+
+        //캐시가 비어 있으면 정확하게 센다.
+        EstimatedPage<MemberTeamDto> first = (EstimatedPage<MemberTeamDto>) estimator.searchPage(condition, PageRequest.of(0, 2));
+        assertThat(first.getTotalElements()).isEqualTo(10);
+        assertThat(first.isTotalEstimated()).isFalse();
+
+        addMembers(team, 3);
+
+        //exact-threshold(5) 이상이라 ttl 동안은 캐시된 값을 추정치로 준다.
+        EstimatedPage<MemberTeamDto> second = (EstimatedPage<MemberTeamDto>) estimator.searchPage(condition, PageRequest.of(1, 2));
+        assertThat(second.getTotalElements()).isEqualTo(10);
+        assertThat(second.isTotalEstimated()).isTrue();
+        assertThat(second.getContent()).hasSize(2);
+
+        Page<MemberTeamDto> exact = memberJpaRepository.searchPage(condition, PageRequest.of(1, 2));
+        assertThat(exact.getTotalElements()).isEqualTo(13);
+
+        //결과가 한 페이지에 다 들어오면 count 없이도 정확하다.
+        EstimatedPage<MemberTeamDto> whole = (EstimatedPage<MemberTeamDto>) estimator.searchPage(condition, PageRequest.of(0, 50));
+        assertThat(whole.getTotalElements()).isEqualTo(13);
+        assertThat(whole.isTotalEstimated()).isFalse();
+
+        //threshold보다 작은 건수는 항상 정확하게 센다.
+        MemberCountEstimator strict = new MemberCountEstimator(memberJpaRepository, em, Duration.ofMinutes(1), 100, 100);
+        EstimatedPage<MemberTeamDto> small = (EstimatedPage<MemberTeamDto>) strict.searchPage(condition, PageRequest.of(0, 2));
+        assertThat(small.getTotalElements()).isEqualTo(13);
+        assertThat(small.isTotalEstimated()).isFalse();
+    }
+
+    private void addMembers(Team team, int count) {
+        for (int i = 0; i < count; i++) {
+            em.persist(new Member("countMember" + i, 20 + i, team));
+        }
+        em.flush();
+        em.clear();
+    }
+}
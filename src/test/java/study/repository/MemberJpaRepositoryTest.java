@@ -5,9 +5,12 @@ import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberField;
 import study.querydsl.dto.MemberSearchCondition;
 
 
@@ -15,13 +18,25 @@ import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
 import study.querydsl.repository.MemberJpaRepository;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
 
 @SpringBootTest(classes = QuerydslApplication.class)
 @Transactional
@@ -81,4 +96,184 @@ class MemberJpaRepositoryTest {
 
         assertThat(result).extracting("username").containsExactly("member4");
     }
-}
\ No newline at end of file
+
+    /**
+     * persist만 하고 flush 전인 팀은 TeamNameCache에 아직 없다. 그래도 같은 트랜잭션의 검색에는 보여야 한다.
+     */
+    @Test
+    public void searchRightAfterPersistTeam() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("freshTeam");
+        //캐시를 먼저 읽어둔다. 이 시점에는 없는 팀이다.
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+
+        Team team = new Team("freshTeam");
+        em.persist(team);
+        em.persist(new Member("freshMember", 10, team));
+
+        assertThat(memberJpaRepository.search(condition))
+                .extracting("username", "teamName")
+                .containsExactly(tuple("freshMember", "freshTeam"));
+        assertThat(memberJpaRepository.count(condition)).isEqualTo(1);
+        assertThat(memberJpaRepository.searchPage(condition, PageRequest.of(0, 10)).getContent())
+                .extracting("teamName")
+                .containsExactly("freshTeam");
+        assertThat(memberJpaRepository.searchFields(condition, MemberField.parse("username")))
+                .extracting(row -> row.get("username"))
+                .containsExactly("freshMember");
+    }
+
+    @PersistenceUnit
+    private EntityManagerFactory emf;
+
+    @Test
+    public void findAllByIdsTest() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.flush();
+        em.clear();
+
+        //입력 순서대로, 중복/없는 id는 빠진다.
+        List<Long> ids = Arrays.asList(member3.getId(), member1.getId(), -1L, member3.getId());
+        Map<Long, Member> result = memberJpaRepository.findAllByIds(ids);
+        assertThat(result.keySet()).containsExactly(member3.getId(), member1.getId());
+
+        Map<Long, MemberTeamDto> dtoResult = memberJpaRepository.findAllByIdsAsDto(ids);
+        assertThat(dtoResult.values()).extracting("username").containsExactly("member3", "member1");
+        assertThat(dtoResult.get(member3.getId()).getTeamName()).isNull();
+    }
+
+    /**
+     * id 개수를 1~1000까지 바꿔가면서 조회해도 in 절 크기가 2의 거듭제곱으로만 나오니까
+     * query plan cache miss는 몇 번 안 나야 한다.
+     */
+    @Test
+    public void findAllByIdsPlanCacheTest() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Member member = new Member("member" + i, i);
+            em.persist(member);
+            ids.add(member.getId());
+        }
+        em.flush();
+        em.clear();
+
+        //통계는 QueryPlanMonitor가 첫 쿼리 때 켜고 계속 켜둔다. 다른 테스트와 같이 쓰는 값이라 끄거나 비우지 않고 차이만 본다.
+        assertThat(memberJpaRepository.findAllByIds(ids.subList(0, 1))).hasSize(1);
+        em.clear();
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        assertThat(statistics.isStatisticsEnabled()).isTrue();
+        long hitsBefore = statistics.getQueryPlanCacheHitCount();
+        long missesBefore = statistics.getQueryPlanCacheMissCount();
+
+        for (int size = 1; size <= ids.size(); size++) {
+            assertThat(memberJpaRepository.findAllByIds(ids.subList(0, size))).hasSize(size);
+            em.clear();
+        }
+        long hits = statistics.getQueryPlanCacheHitCount() - hitsBefore;
+        long misses = statistics.getQueryPlanCacheMissCount() - missesBefore;
+        System.out.println("planCacheHit = " + hits + ", planCacheMiss = " + misses);
+        //1, 2, 4 ... 512 -> 10가지 모양만 나온다.
+        assertThat(misses).isLessThanOrEqualTo(10);
+        assertThat(hits).isGreaterThan(misses);
+    }
+
+    @Test
+    public void searchIgnoreCaseTest() {
+        em.persist(new Member("José", 10));
+        em.persist(new Member("JOSE", 20));
+        em.persist(new Member("josef", 30));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("jose");
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+
+        condition.setUsernameIgnoreCase(true);
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+        assertThat(result).extracting("username").containsExactlyInAnyOrder("José", "JOSE");
+    }
+
+    /**
+     * lower(username) = ? 는 full scan이고, 정규화된 컬럼 비교는 인덱스를 탄다.
+     * H2의 explain 결과에 사용한 인덱스 이름이 나온다.
+     */
+    @Test
+    public void normalizedUsernameIndexPlanTest() {
+        String indexed = (String) em.createNativeQuery(
+                        "explain select m.member_id from member m where m.normalized_username = 'jose'")
+                .getSingleResult();
+        String lowered = (String) em.createNativeQuery(
+                        "explain select m.member_id from member m where lower(m.username) = 'jose'")
+                .getSingleResult();
+        System.out.println("indexed = " + indexed);
+        System.out.println("lowered = " + lowered);
+
+        assertThat(indexed.toUpperCase()).contains("IDX_MEMBER_NORMALIZED_USERNAME");
+        assertThat(lowered.toUpperCase()).doesNotContain("IDX_MEMBER_NORMALIZED_USERNAME");
+    }
+
+    @Test
+    public void searchPageWithTeamTest() {
+        Team teamA = new Team("twoPhaseA");
+        Team teamB = new Team("twoPhaseB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("twoPhase" + i, i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("twoPhaseA");
+        Page<Member> page = memberJpaRepository.searchPageWithTeam(condition, PageRequest.of(0, 3));
+
+        //나이 많은 순서가 id in (...) 쿼리 뒤에도 유지된다.
+        assertThat(page.getContent()).extracting("username").containsExactly("twoPhase8", "twoPhase6", "twoPhase4");
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).allMatch(m -> Hibernate.isInitialized(m.getTeam()));
+
+        Page<Member> last = memberJpaRepository.searchPageWithTeam(condition, PageRequest.of(1, 3));
+        assertThat(last.getContent()).extracting("username").containsExactly("twoPhase2", "twoPhase0");
+    }
+
+    @Test
+    public void searchFieldsTest() {
+        Team team = new Team("fieldsTeam");
+        em.persist(team);
+        em.persist(new Member("fields1", 10, team));
+        em.persist(new Member("fields2", 20, team));
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("fieldsTeam");
+
+        List<Map<String, Object>> names = memberJpaRepository.searchFields(condition, MemberField.parse("username"));
+        assertThat(names).extracting(row -> row.keySet()).allMatch(keys -> keys.equals(Set.of("username")));
+        assertThat(names).extracting(row -> row.get("username")).containsExactlyInAnyOrder("fields1", "fields2");
+
+        //team join 없이 teamId만
+        condition.setTeamName(null);
+        condition.setUsername("fields2");
+        List<Map<String, Object>> rows = memberJpaRepository.searchFields(condition, MemberField.parse("age, teamId"));
+        assertThat(rows).hasSize(1);
+        assertThat(rows.get(0)).containsExactly(
+                entry("age", 20),
+                entry("teamId", team.getId()));
+
+        List<Map<String, Object>> withName = memberJpaRepository.searchFields(condition, MemberField.parse("teamName"));
+        assertThat(withName.get(0)).containsEntry("teamName", "fieldsTeam");
+
+        assertThatThrownBy(() -> MemberField.parse("username,password"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,259 @@
+package study.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberLeaderboard;
+import study.querydsl.repository.TeamNameCache;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 순위표는 커밋된 변경만 넣으니까 회원은 TransactionTemplate으로 커밋하고 끝나면 지운다.
+ */
+@SpringBootTest(classes = QuerydslApplication.class)
+class MemberLeaderboardTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private JPAQueryFactory queryFactory;
+
+    @Autowired
+    private MemberLeaderboard memberLeaderboard;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    private TeamNameCache teamNameCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate tx;
+    private final List<Long> createdMembers = new ArrayList<>();
+    private final List<Long> createdTeams = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            for (Long id : createdMembers) {
+                Member found = em.find(Member.class, id);
+                if (found != null) {
+                    em.remove(found);
+                }
+            }
+            em.flush();
+            for (Long id : createdTeams) {
+                Team found = em.find(Team.class, id);
+                if (found != null) {
+                    em.remove(found);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void leaderboardFollowsWritesWithoutRebuild() {
+        Team team = new Team("boardTeam");
+        Team other = new Team("boardOther");
+        List<Member> members = new ArrayList<>();
+        tx.executeWithoutResult(status -> {
+            persist(team);
+            persist(other);
+            for (int i = 0; i < 30; i++) {
+                members.add(persist(new Member("board" + i, 5000 + i, team)));
+            }
+            //나이가 같으면 username 순
+            persist(new Member("boardTie", 5020, team));
+        });
+
+        assertConsistent(team.getId());
+        long rebuilds = memberLeaderboard.rebuildCount();
+
+        //1등은 꼴찌로, 2등은 삭제, 새 1등 추가, 3등은 다른 팀으로
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, members.get(29).getId()).setAge(0);
+            em.remove(em.find(Member.class, members.get(28).getId()));
+            persist(new Member("boardNew", 9000, em.find(Team.class, team.getId())));
+            em.find(Member.class, members.get(27).getId()).setTeam(em.find(Team.class, other.getId()));
+        });
+
+        assertConsistent(team.getId());
+        assertThat(memberLeaderboard.rebuildCount()).isEqualTo(rebuilds);
+        assertThat(memberLeaderboard.top(null).get(0).getUsername()).isEqualTo("boardNew");
+    }
+
+    /**
+     * 커밋 전 변경은 그 트랜잭션 안에서만 보이고, 롤백되면 순위표에 남지 않는다.
+     */
+    @Test
+    public void uncommittedChangesStayInTransaction() throws Exception {
+        tx.executeWithoutResult(status -> persist(new Member("boardVisible", 8_000_000)));
+        assertThat(memberLeaderboard.top(null).get(0).getUsername()).isEqualTo("boardVisible");
+
+        tx.executeWithoutResult(status -> {
+            em.persist(new Member("boardUncommitted", 9_000_000));
+            em.flush();
+            assertThat(memberLeaderboard.top(null).get(0).getUsername()).isEqualTo("boardUncommitted");
+            List<MemberTeamDto> otherThread;
+            try {
+                otherThread = CompletableFuture.supplyAsync(() -> memberLeaderboard.top(null)).get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            assertThat(otherThread.get(0).getUsername()).isEqualTo("boardVisible");
+            status.setRollbackOnly();
+        });
+
+        assertThat(memberLeaderboard.top(null).get(0).getUsername()).isEqualTo("boardVisible");
+    }
+
+    @Test
+    public void bulkUpdateRebuilds() {
+        Team team = new Team("boardBulk");
+        tx.executeWithoutResult(status -> {
+            persist(team);
+            for (int i = 0; i < 15; i++) {
+                persist(new Member("bulk" + i, 6000 + i, team));
+            }
+        });
+        assertConsistent(team.getId());
+        long rebuilds = memberLeaderboard.rebuildCount();
+
+        tx.executeWithoutResult(status -> memberJpaRepository.bulkAgePlus(6010));
+
+        assertConsistent(team.getId());
+        assertThat(memberLeaderboard.rebuildCount()).isGreaterThan(rebuilds);
+        assertThat(memberLeaderboard.top(team.getId()).get(0).getAge()).isEqualTo(6015);
+    }
+
+    @Test
+    public void shrinkingBelowSizeRebuilds() {
+        Team team = new Team("boardShrink");
+        List<Member> members = new ArrayList<>();
+        tx.executeWithoutResult(status -> {
+            persist(team);
+            for (int i = 0; i < 40; i++) {
+                members.add(persist(new Member("shrink" + i, 7000 + i, team)));
+            }
+        });
+        assertConsistent(team.getId());
+
+        //순위표(20명)에서 15명을 빼면 10명 아래로 떨어져서 다음 조회 때 다시 읽는다.
+        tx.executeWithoutResult(status -> {
+            for (int i = 39; i >= 25; i--) {
+                em.remove(em.find(Member.class, members.get(i).getId()));
+            }
+        });
+
+        assertConsistent(team.getId());
+    }
+
+    @Test
+    @Transactional
+    public void unknownTeamGetsNoBoard() {
+        MemberLeaderboard leaderboard = new MemberLeaderboard(queryFactory, teamNameCache, transactionManager, 10, 2);
+        try {
+            assertThat(leaderboard.top(-1L)).isEmpty();
+            assertThat(leaderboard.teamBoardCount()).isZero();
+
+            //max-teams(2)를 넘으면 가장 오래 안 쓴 팀 순위표를 버린다.
+            for (int i = 0; i < 3; i++) {
+                Team team = new Team("boardEvict" + i);
+                em.persist(team);
+                em.persist(new Member("evict" + i, 10, team));
+                em.flush();
+                assertThat(leaderboard.top(team.getId())).extracting("username").containsExactly("evict" + i);
+            }
+            assertThat(leaderboard.teamBoardCount()).isEqualTo(2);
+        } finally {
+            leaderboard.close();
+        }
+    }
+
+    /**
+     * 순위표가 비어(dirty) 있을 때 회원을 저장하고, 커밋 전에 다른 스레드가 순위표를 다시 읽으면
+     * 커밋 전 DB(새 회원이 없는)로 만들어진다. 커밋한 뒤에는 모아 둔 변경이 들어가서 새 회원이 보여야 한다.
+     */
+    @Test
+    public void commitAppliesChangesToBoardRebuiltBeforeCommit() throws Exception {
+        MemberLeaderboard leaderboard = new MemberLeaderboard(queryFactory, teamNameCache, transactionManager, 10, 100);
+        try {
+            tx.executeWithoutResult(status -> {
+                persist(new Member("boardCommitted", 1_000_000));
+                em.flush();
+                List<MemberTeamDto> beforeCommit;
+                try {
+                    beforeCommit = CompletableFuture.supplyAsync(() -> leaderboard.top(null)).get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                assertThat(beforeCommit).extracting("username").doesNotContain("boardCommitted");
+            });
+
+            long rebuilds = leaderboard.rebuildCount();
+            assertThat(leaderboard.top(null).get(0).getUsername()).isEqualTo("boardCommitted");
+            assertThat(leaderboard.rebuildCount()).isEqualTo(rebuilds);
+        } finally {
+            leaderboard.close();
+        }
+    }
+
+    private Member persist(Member member) {
+        em.persist(member);
+        createdMembers.add(member.getId());
+        return member;
+    }
+
+    private void persist(Team team) {
+        em.persist(team);
+        createdTeams.add(team.getId());
+    }
+
+    private void assertConsistent(Long teamId) {
+        assertThat(ids(memberLeaderboard.top(null))).isEqualTo(sqlTop(null));
+        assertThat(ids(memberLeaderboard.top(teamId))).isEqualTo(sqlTop(teamId));
+    }
+
+    private List<Long> sqlTop(Long teamId) {
+        return queryFactory
+                .select(member.id)
+                .from(member)
+                .where(teamId == null ? null : member.team.id.eq(teamId))
+                .orderBy(member.age.desc(), member.username.asc().nullsLast(), member.id.asc())
+                .limit(10)
+                .fetch();
+    }
+
+    private static List<Long> ids(List<MemberTeamDto> top) {
+        return top.stream().map(MemberTeamDto::getMemberId).collect(Collectors.toList());
+    }
+}
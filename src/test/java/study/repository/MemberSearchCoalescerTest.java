@@ -0,0 +1,112 @@
+package study.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.query.QueryPlanMonitor;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberSearchCoalescer;
+import study.querydsl.repository.TeamNameCache;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//쓰기 트랜잭션 안에서는 합치지 않으니까 @Transactional을 붙이지 않는다. (데이터도 쓰지 않는다)
+@SpringBootTest(classes = QuerydslApplication.class)
+class MemberSearchCoalescerTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private JPAQueryFactory queryFactory;
+
+    @Autowired
+    private TeamNameCache teamNameCache;
+
+    @Autowired
+    private QueryPlanMonitor queryPlanMonitor;
+
+    /**
+     * 20개 스레드가 같은 조건으로 동시에 검색하면 SQL은 한 번만 나가야 한다.
+     * leader는 SQL을 실행한 뒤 나머지가 전부 합류할 때까지 결과를 들고 기다리므로 항상 겹친다.
+     */
+    @Test
+    public void concurrentIdenticalSearchesRunOneSql() throws Exception {
+        int threads = 20;
+        MemberSearchCoalescer[] coalescer = new MemberSearchCoalescer[1];
+        MemberJpaRepository repository = new MemberJpaRepository(em, queryFactory, teamNameCache, Optional.empty()) {
+            @Override
+            public List<MemberTeamDto> search(MemberSearchCondition condition) {
+                List<MemberTeamDto> result = super.search(condition);
+                awaitCoalesced(coalescer[0], threads - 1);
+                return result;
+            }
+        };
+        coalescer[0] = new MemberSearchCoalescer(repository);
+
+        //통계 스위치는 QueryPlanMonitor 것이다. 켜두기만 하고 끄지 않는다.
+        queryPlanMonitor.stats();
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long before = statistics.getPrepareStatementCount();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<MemberTeamDto>>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                //공백이 달라도 같은 검색으로 합쳐진다.
+                String username = i % 2 == 0 ? "coalesce-nobody" : " coalesce-nobody ";
+                results.add(executor.submit(() -> {
+                    start.await();
+                    MemberSearchCondition condition = new MemberSearchCondition();
+                    condition.setUsername(username);
+                    return coalescer[0].search(condition);
+                }));
+            }
+            start.countDown();
+            for (Future<List<MemberTeamDto>> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEmpty();
+            }
+
+            assertThat(statistics.getPrepareStatementCount() - before).isEqualTo(1);
+            assertThat(coalescer[0].metrics())
+                    .containsEntry("executed", 1L)
+                    .containsEntry("coalesced", (long) threads - 1)
+                    .containsEntry("inFlight", 0L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitCoalesced(MemberSearchCoalescer coalescer, long followers) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.metrics().get("coalesced") < followers && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package study.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.entity.TeamChangeListener;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.ShardedMemberRepository;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 샤드는 테스트마다 새로 만든 H2 메모리 DB 3개다. 샤드는 자기 트랜잭션을 쓰므로 @Transactional은 붙이지 않는다.
+ */
+@SpringBootTest(classes = QuerydslApplication.class, properties = {
+        "member.sharding.enabled=true",
+        "member.sharding.shard-count=3",
+        "member.sharding.url=jdbc:h2:mem:sharded-test-%d;DB_CLOSE_DELAY=-1"
+})
+class ShardedMemberRepositoryTest {
+
+    @Autowired
+    private ShardedMemberRepository shardedMemberRepository;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void scatterGatherSearchTest() {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        for (int t = 0; t < 6; t++) {
+            Team team = new Team(prefix + "-team" + t);
+            shardedMemberRepository.saveTeam(team);
+            for (int i = 0; i < 5; i++) {
+                shardedMemberRepository.save(new Member(prefix + "-member" + t + "-" + i, t * 10 + i, team));
+            }
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(0);
+        condition.setAgeLoe(100);
+        List<MemberTeamDto> all = shardedMemberRepository.search(condition).stream()
+                .filter(dto -> dto.getUsername().startsWith(prefix))
+                .collect(Collectors.toList());
+        assertThat(all).hasSize(30);
+        //샤드마다 따로 나온 결과가 memberId 순으로 합쳐진다.
+        assertThat(all).isSortedAccordingTo((a, b) -> a.getMemberId().compareTo(b.getMemberId()));
+        assertThat(all).extracting("memberId").doesNotHaveDuplicates();
+
+        condition.setTeamName(prefix + "-team3");
+        List<MemberTeamDto> team3 = shardedMemberRepository.search(condition);
+        assertThat(team3).extracting("username")
+                .containsExactly(prefix + "-member3-0", prefix + "-member3-1", prefix + "-member3-2",
+                        prefix + "-member3-3", prefix + "-member3-4");
+    }
+
+    @Test
+    public void pagedSearchTest() {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        for (int t = 0; t < 3; t++) {
+            Team team = new Team(prefix + "-team" + t);
+            shardedMemberRepository.saveTeam(team);
+            for (int i = 0; i < 4; i++) {
+                shardedMemberRepository.save(new Member(prefix + "-member", 200 + t, team));
+            }
+        }
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(prefix + "-member");
+
+        Page<MemberTeamDto> page0 = shardedMemberRepository.search(condition, PageRequest.of(0, 5));
+        Page<MemberTeamDto> page2 = shardedMemberRepository.search(condition, PageRequest.of(2, 5));
+
+        assertThat(page0.getTotalElements()).isEqualTo(12);
+        assertThat(page0.getContent()).hasSize(5);
+        assertThat(page2.getContent()).hasSize(2);
+        assertThat(page0.getContent().get(4).getMemberId()).isLessThan(page2.getContent().get(0).getMemberId());
+    }
+
+    /**
+     * 샤딩을 켜면 MemberJpaRepository의 저장과 검색이 샤드로 간다.
+     */
+    @Test
+    public void memberJpaRepositoryRoutesThroughShards() {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        for (int t = 0; t < 3; t++) {
+            //팀은 save가 샤드에 같이 저장한다.
+            Team team = new Team(prefix + "-team" + t);
+            for (int i = 0; i < 2; i++) {
+                memberJpaRepository.save(new Member(prefix + "-routed", 300 + t, team));
+            }
+        }
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(prefix + "-routed");
+
+        assertThat(memberJpaRepository.search(condition)).hasSize(6);
+        assertThat(shardedMemberRepository.search(condition)).hasSize(6);
+        assertThat(memberJpaRepository.count(condition)).isEqualTo(6);
+        Page<MemberTeamDto> page = memberJpaRepository.searchPage(condition, PageRequest.of(1, 4));
+        assertThat(page.getTotalElements()).isEqualTo(6);
+        assertThat(page.getContent()).hasSize(2);
+
+        condition.setTeamName(prefix + "-team1");
+        assertThat(memberJpaRepository.search(condition)).extracting("age").containsOnly(301);
+    }
+
+    /**
+     * 샤드에 쓴 변경은 메인 DB 기준 구독자(TeamNameCache 등)에게 알리지 않는다.
+     */
+    @Test
+    public void shardWritesDoNotNotifyMainListeners() {
+        AtomicInteger teamChanges = new AtomicInteger();
+        Runnable subscriber = teamChanges::incrementAndGet;
+        TeamChangeListener.subscribe(subscriber);
+        try {
+            Team team = new Team(UUID.randomUUID().toString().substring(0, 8) + "-quiet");
+            shardedMemberRepository.saveTeam(team);
+            shardedMemberRepository.save(new Member("quiet", 1, team));
+        } finally {
+            TeamChangeListener.unsubscribe(subscriber);
+        }
+        assertThat(teamChanges.get()).isZero();
+    }
+}
@@ -0,0 +1,104 @@
+package study.repository;
+
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.TeamMemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.LazyLoadGuard.assertNoLazyLoading;
+
+@SpringBootTest(classes = QuerydslApplication.class)
+@Transactional
+class TeamMemberRepositoryTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private TeamMemberRepository teamMemberRepository;
+
+    @Test
+    public void sizeAndAddWithoutLoadingTest() {
+        Long teamId = createTeam("bigTeam", 25);
+        Team team = em.find(Team.class, teamId);
+
+        //extra lazy: size는 count 쿼리로 답한다.
+        int size = assertNoLazyLoading(em, () -> team.getMembers().size());
+        assertThat(size).isEqualTo(25);
+
+        //changeTeam도 컬렉션을 로딩하지 않는다.
+        Member late = assertNoLazyLoading(em, () -> new Member("late", 99, team));
+        em.persist(late);
+        assertThat(Hibernate.isInitialized(team.getMembers())).isFalse();
+        assertThat(team.getMembers().size()).isEqualTo(26);
+        assertThat(Hibernate.isInitialized(team.getMembers())).isFalse();
+
+        assertThat(teamMemberRepository.countMembers(teamId)).isEqualTo(26);
+        assertThat(teamMemberRepository.isMember(teamId, late.getId())).isTrue();
+    }
+
+    @Test
+    public void findMembersSliceTest() {
+        Long teamId = createTeam("sliceTeam", 25);
+        Long otherTeamId = createTeam("otherTeam", 1);
+
+        Slice<Member> first = teamMemberRepository.findMembers(teamId, PageRequest.of(0, 10));
+        assertThat(first.getContent()).hasSize(10);
+        assertThat(first.hasNext()).isTrue();
+
+        Slice<Member> last = teamMemberRepository.findMembers(teamId, PageRequest.of(2, 10));
+        assertThat(last.getContent()).hasSize(5);
+        assertThat(last.hasNext()).isFalse();
+        assertThat(last.getContent()).extracting("username").startsWith("sliceTeam-20");
+
+        Long outsider = teamMemberRepository.findMembers(otherTeamId, PageRequest.of(0, 1)).getContent().get(0).getId();
+        assertThat(teamMemberRepository.isMember(teamId, outsider)).isFalse();
+    }
+
+    @Test
+    public void findTeamsWithMembersTest() {
+        Long first = createTeam("pagedTeam1", 3);
+        Long second = createTeam("pagedTeam2", 4);
+        Long third = createTeam("pagedTeam3", 5);
+
+        //최근 만든 팀부터
+        Page<Team> page = teamMemberRepository.findTeamsWithMembers(PageRequest.of(0, 2));
+        assertThat(page.getContent()).extracting("id").containsExactly(third, second);
+        assertThat(page.getTotalElements()).isGreaterThanOrEqualTo(3);
+
+        //fetch join으로 이미 채워져 있어서 더 읽지 않는다.
+        List<Integer> sizes = assertNoLazyLoading(em, () -> page.getContent().stream()
+                .map(team -> team.getMembers().size())
+                .collect(Collectors.toList()));
+        assertThat(sizes).containsExactly(5, 4);
+        assertThat(page.getContent()).allMatch(team -> Hibernate.isInitialized(team.getMembers()));
+
+        Page<Team> next = teamMemberRepository.findTeamsWithMembers(PageRequest.of(1, 2));
+        assertThat(next.getContent()).extracting("id").first().isEqualTo(first);
+    }
+
+    private Long createTeam(String name, int memberCount) {
+        Team team = new Team(name);
+        em.persist(team);
+        for (int i = 0; i < memberCount; i++) {
+            em.persist(new Member(name + "-" + i, i, team));
+        }
+        em.flush();
+        em.clear();
+        return team.getId();
+    }
+}
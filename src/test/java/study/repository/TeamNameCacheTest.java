@@ -0,0 +1,100 @@
+package study.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.QuerydslApplication;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.TeamNameCache;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(classes = QuerydslApplication.class)
+@Transactional
+class TeamNameCacheTest {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Autowired
+    private MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    private TeamNameCache teamNameCache;
+
+    @Test
+    public void teamWritesInvalidateCache() {
+        Team team = new Team("cacheTeam");
+        em.persist(team);
+        em.persist(new Member("cache1", 10, team));
+        em.flush();
+
+        assertThat(teamNameCache.idsOf("cacheTeam")).containsExactly(team.getId());
+        long loads = teamNameCache.loadCount();
+        teamNameCache.idsOf("cacheTeam");
+        assertThat(teamNameCache.loadCount()).isEqualTo(loads);
+
+        //이름을 바꾸면 리스너가 캐시를 비운다.
+        team.setName("cacheTeamRenamed");
+        em.flush();
+        assertThat(teamNameCache.idsOf("cacheTeam")).isEmpty();
+        assertThat(teamNameCache.nameOf(team.getId())).isEqualTo("cacheTeamRenamed");
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("cacheTeamRenamed");
+        List<MemberTeamDto> result = memberJpaRepository.search(condition);
+        assertThat(result).extracting("username").containsExactly("cache1");
+        assertThat(result).extracting("teamName").containsExactly("cacheTeamRenamed");
+
+        //없는 팀 이름이면 쿼리 없이 빈 결과
+        condition.setTeamName("noSuchTeam");
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+    }
+
+    /**
+     * flush 뒤 커밋 전에 다른 스레드가 공유 스냅샷을 새로 읽어도(그 스레드는 새 팀을 못 본다)
+     * 팀을 만든 트랜잭션은 자기 팀을 찾을 수 있어야 한다.
+     */
+    @Test
+    public void transactionSeesItsOwnNewTeam() throws Exception {
+        Team team = new Team("cacheOwnTeam");
+        em.persist(team);
+        em.flush();
+
+        List<Long> fromOtherThread = CompletableFuture.supplyAsync(() -> teamNameCache.idsOf("cacheOwnTeam"))
+                .get(5, TimeUnit.SECONDS);
+        assertThat(fromOtherThread).isEmpty();
+
+        assertThat(teamNameCache.idsOf("cacheOwnTeam")).containsExactly(team.getId());
+        assertThat(teamNameCache.nameOf(team.getId())).isEqualTo("cacheOwnTeam");
+    }
+
+    /**
+     * 모르는 id를 계속 물어봐도 버전을 올리거나 매번 다시 읽지 않는다.
+     */
+    @Test
+    public void unknownIdDoesNotReloadEveryTime() {
+        teamNameCache.idsOf("anything");
+        long loads = teamNameCache.loadCount();
+        for (int i = 0; i < 100; i++) {
+            assertThat(teamNameCache.nameOf(-1L)).isNull();
+        }
+        //스냅샷이 오래됐으면 처음 한 번은 다시 읽을 수 있다.
+        assertThat(teamNameCache.loadCount() - loads).isLessThanOrEqualTo(1);
+
+        long afterMisses = teamNameCache.loadCount();
+        teamNameCache.idsOf("anything");
+        assertThat(teamNameCache.loadCount()).isEqualTo(afterMisses);
+    }
+}